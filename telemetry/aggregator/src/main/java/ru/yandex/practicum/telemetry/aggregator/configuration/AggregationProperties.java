@@ -0,0 +1,183 @@
+package ru.yandex.practicum.telemetry.aggregator.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки агрегации снапшотов.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "aggregator")
+public class AggregationProperties {
+
+    /**
+     * Количество потоков слушателя событий датчиков.
+     * Каждый поток владеет состоянием хабов своих партиций, поэтому имеет смысл
+     * не больше потоков, чем партиций в топике событий.
+     */
+    private int concurrency = 1;
+
+    private Publishing publishing = new Publishing();
+
+    private State state = new State();
+
+    private HubCache hubCache = new HubCache();
+
+    private Reorder reorder = new Reorder();
+
+    @Getter
+    @Setter
+    public static class Publishing {
+        /**
+         * Конвейерная отправка: снапшоты пакета отправляются без ожидания каждого,
+         * подтверждения ожидаются один раз в конце пакета, и офсеты пакета коммитятся одним вызовом.
+         * Если выключено, каждый снапшот отправляется синхронно, а офсет коммитится после каждого события.
+         */
+        private boolean pipelined = true;
+
+        /**
+         * Объединение снапшотов: вместо снапшота на каждое изменение отправляется
+         * один снапшот хаба с итоговым состоянием за пакет или за окно {@link #coalescingWindow}.
+         * Объединение всегда использует конвейерную отправку.
+         */
+        private Coalescing coalescing = Coalescing.NONE;
+
+        /**
+         * Окно объединения для режима {@link Coalescing#WINDOW}: изменения хаба копятся
+         * не дольше этого времени, и офсеты партиции коммитятся только после их отправки.
+         */
+        private Duration coalescingWindow = Duration.ofSeconds(1);
+
+        /**
+         * Формат сообщений в топике снапшотов.
+         */
+        private SnapshotFormat format = SnapshotFormat.FULL;
+
+        /**
+         * Для формата {@link SnapshotFormat#DELTA}: количество версий хаба между опорными кадрами
+         * с полным состоянием. Определяет, сколько дельт потребитель пропустит после подключения
+         * к топику или потери версии.
+         */
+        private int keyframeInterval = 100;
+
+        /**
+         * Транзакционная отправка: снапшоты пакета и офсеты его событий фиксируются одной
+         * транзакцией Kafka ({@code sendOffsetsToTransaction}), поэтому после сбоя снапшоты
+         * не дублируются и не теряются. Потребители топика снапшотов должны читать его
+         * с {@code isolation.level=read_committed}. Для отката состояния после прерванной
+         * транзакции нужно локальное хранилище ({@link State#isEnabled()}).
+         * Транзакционная отправка всегда конвейерная.
+         */
+        private boolean transactional = false;
+
+        /**
+         * Префикс {@code transactional.id} продюсеров снапшотов; должен быть уникальным
+         * для каждого экземпляра сервиса.
+         */
+        private String transactionIdPrefix = "aggregator-tx-";
+    }
+
+    public enum SnapshotFormat {
+        /**
+         * {@code SensorsSnapshotAvro} с полным состоянием хаба.
+         */
+        FULL,
+        /**
+         * {@code SensorsSnapshotDeltaAvro} с изменившимися датчиками и периодическими опорными кадрами.
+         * Потребители должны читать топик через {@code SnapshotDeltaDeserializer}.
+         */
+        DELTA
+    }
+
+    public enum Coalescing {
+        /**
+         * Снапшот на каждое изменение состояния хаба.
+         */
+        NONE,
+        /**
+         * Не больше одного снапшота хаба на пакет событий.
+         */
+        BATCH,
+        /**
+         * Не больше одного снапшота хаба за окно объединения.
+         */
+        WINDOW
+    }
+
+    @Getter
+    @Setter
+    public static class State {
+        /**
+         * Сохранять состояние хабов на локальный диск и восстанавливать его при назначении партиции.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Каталог хранилища; для каждой партиции создается отдельный подкаталог.
+         */
+        private String directory = "aggregator-state";
+
+        /**
+         * Максимальный интервал между контрольными точками партиции.
+         */
+        private Duration checkpointInterval = Duration.ofMinutes(1);
+
+        /**
+         * Количество записей журнала, после которого контрольная точка создается досрочно.
+         */
+        private int checkpointLogEntries = 10_000;
+
+        /**
+         * Принудительно сбрасывать журнал на диск (fsync) после каждого пакета,
+         * а файлы вытесненных хабов - при записи.
+         * Без этого журнал переживает падение процесса, но не отключение питания;
+         * потерянный хвост журнала восстанавливается повторным чтением событий.
+         */
+        private boolean fsync = false;
+    }
+
+    @Getter
+    @Setter
+    public static class HubCache {
+        /**
+         * Максимальное количество хабов партиции в памяти. Сверх него давно не обновлявшиеся хабы
+         * вытесняются в локальное хранилище состояния и загружаются обратно при следующем событии.
+         * Без хранилища состояния хабы не вытесняются, и лимит не соблюдается.
+         */
+        private int maxHubsPerPartition = 100_000;
+
+        /**
+         * Хабы без событий дольше этого времени вытесняются в хранилище независимо от лимита.
+         */
+        private Duration idleTimeout = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class Reorder {
+        /**
+         * Упорядочивать события каждого хаба по времени события перед применением к состоянию.
+         * Упорядочивание использует конвейерную отправку, а офсеты партиции коммитятся
+         * только до первого события, ожидающего в буфере.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Насколько события хаба могут отставать от самого нового события хаба и все еще
+         * попасть на свое место. Водяной знак хаба - время самого нового события минус это значение;
+         * событие ждет в буфере, пока водяной знак его не пройдет, но не дольше этого же времени
+         * по часам агрегатора. Это задержка, добавляемая к каждому снапшоту.
+         */
+        private Duration maxOutOfOrderness = Duration.ofMillis(200);
+
+        /**
+         * События, пришедшие после водяного знака, но не позже него на это время,
+         * применяются сразу вне порядка (опоздавшие), более старые отбрасываются.
+         */
+        private Duration allowedLateness = Duration.ofSeconds(5);
+    }
+}
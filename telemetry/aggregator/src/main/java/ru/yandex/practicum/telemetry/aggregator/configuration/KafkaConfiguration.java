@@ -4,20 +4,116 @@ import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.CommonLoggingErrorHandler;
 import ru.yandex.practicum.kafka.telemetry.configuration.KafkaListenerFactoryBuilder;
 import ru.yandex.practicum.kafka.telemetry.deserializer.SensorEventDeserializer;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotShardRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Конфигурация Kafka для сервиса Aggregator.
- * Создает listener factory для обработки событий датчиков.
+ * Создает listener factory для обработки событий датчиков и продюсеры снапшотов.
  */
 @Configuration
 public class KafkaConfiguration {
 
+    /**
+     * ProducerFactory для полных снапшотов, настроенная из spring.kafka.producer.
+     */
+    @Bean
+    public ProducerFactory<String, SensorsSnapshotAvro> snapshotProducerFactory(
+            KafkaProperties kafkaProperties,
+            AggregationProperties aggregationProperties) {
+        DefaultKafkaProducerFactory<String, SensorsSnapshotAvro> factory =
+                new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(null));
+        configureTransactions(factory, aggregationProperties, "");
+        return factory;
+    }
+
+    @Bean
+    public KafkaTemplate<String, SensorsSnapshotAvro> snapshotKafkaTemplate(
+            ProducerFactory<String, SensorsSnapshotAvro> snapshotProducerFactory) {
+        return new KafkaTemplate<>(snapshotProducerFactory);
+    }
+
+    /**
+     * ProducerFactory для дельта-снапшотов. Дельты всегда пишутся с отпечатком схемы,
+     * чтобы потребитель отличал их от полных снапшотов в том же топике.
+     */
+    @Bean
+    public ProducerFactory<String, SensorsSnapshotDeltaAvro> snapshotDeltaProducerFactory(
+            KafkaProperties kafkaProperties,
+            AggregationProperties aggregationProperties) {
+        Map<String, Object> props = new HashMap<>(kafkaProperties.buildProducerProperties(null));
+        props.put(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG, true);
+        DefaultKafkaProducerFactory<String, SensorsSnapshotDeltaAvro> factory = new DefaultKafkaProducerFactory<>(props);
+        configureTransactions(factory, aggregationProperties, "delta-");
+        return factory;
+    }
+
+    @Bean
+    public KafkaTemplate<String, SensorsSnapshotDeltaAvro> snapshotDeltaKafkaTemplate(
+            ProducerFactory<String, SensorsSnapshotDeltaAvro> snapshotDeltaProducerFactory) {
+        return new KafkaTemplate<>(snapshotDeltaProducerFactory);
+    }
+
+    /**
+     * Слушатель событий датчиков работает в нескольких потоках; состояние хабов
+     * передается между ними при перебалансировке через {@link SnapshotShardRegistry}.
+     */
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, SensorEventAvro> sensorEventListenerFactory(
-            KafkaProperties kafkaProperties) {
-        return KafkaListenerFactoryBuilder.create(kafkaProperties, SensorEventDeserializer.class);
+            KafkaProperties kafkaProperties,
+            AggregationProperties aggregationProperties,
+            SnapshotShardRegistry snapshotShardRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, SensorEventAvro> factory =
+                KafkaListenerFactoryBuilder.create(kafkaProperties, SensorEventDeserializer.class);
+        factory.setConcurrency(aggregationProperties.getConcurrency());
+        factory.getContainerProperties().setConsumerRebalanceListener(snapshotShardRegistry);
+
+        // Без новых событий накопленные за окно снапшоты и события буфера упорядочивания
+        // обрабатываются по событию простоя
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        long idleEventInterval = Long.MAX_VALUE;
+        if (publishing.getCoalescing() == AggregationProperties.Coalescing.WINDOW) {
+            idleEventInterval = publishing.getCoalescingWindow().toMillis();
+        }
+        if (aggregationProperties.getReorder().isEnabled()) {
+            idleEventInterval = Math.min(idleEventInterval,
+                    aggregationProperties.getReorder().getMaxOutOfOrderness().toMillis());
+        }
+        if (idleEventInterval != Long.MAX_VALUE) {
+            factory.getContainerProperties().setIdleEventInterval(idleEventInterval);
+        }
+
+        // После прерванной транзакции слушатель сам откатывает состояние и переносит позицию
+        // чтения на закоммиченный офсет: пакет нельзя ни повторять из памяти, ни подтверждать
+        if (publishing.isTransactional()) {
+            CommonLoggingErrorHandler errorHandler = new CommonLoggingErrorHandler();
+            errorHandler.setAckAfterHandle(false);
+            factory.setCommonErrorHandler(errorHandler);
+        }
+        return factory;
+    }
+
+    /**
+     * Делает продюсеры фабрики транзакционными в транзакционном режиме.
+     * У фабрик разные префиксы, чтобы их продюсеры не вытесняли транзакции друг друга.
+     */
+    private static void configureTransactions(DefaultKafkaProducerFactory<?, ?> factory,
+                                              AggregationProperties aggregationProperties, String suffix) {
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        if (publishing.isTransactional()) {
+            factory.setTransactionIdPrefix(publishing.getTransactionIdPrefix() + suffix);
+        }
     }
-}
\ No newline at end of file
+}
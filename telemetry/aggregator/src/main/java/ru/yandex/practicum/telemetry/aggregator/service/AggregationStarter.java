@@ -2,38 +2,81 @@ package ru.yandex.practicum.telemetry.aggregator.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
 import ru.yandex.practicum.telemetry.aggregator.configuration.KafkaTopicsProperties;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * Класс AggregationStarter, ответственный за запуск агрегации данных.
+ * <p>
+ * Слушатель работает в нескольких потоках. Каждое событие обрабатывается состоянием
+ * своей партиции из {@link SnapshotShardRegistry}, которым владеет текущий поток.
+ * <p>
+ * В конвейерном режиме снапшоты всего пакета отправляются без ожидания, подтверждения
+ * ожидаются один раз, после чего сбрасываются журналы состояния и коммитятся офсеты пакета.
+ * Снапшоты одного хаба уходят в одну партицию в порядке событий, а продюсер с идемпотентностью
+ * сохраняет этот порядок при повторных отправках. Если хотя бы одна отправка не удалась,
+ * ни журнал, ни офсеты не фиксируются и пакет читается повторно. События пакета к этому моменту
+ * уже применены к состоянию, и при повторном чтении оно не изменится, поэтому хабы неудавшихся
+ * отправок возвращаются в очередь партиции ({@link SnapshotShard#requeue(Collection)})
+ * и отправляются первыми при следующей обработке.
+ * <p>
+ * При объединении ({@link AggregationProperties.Coalescing}) отправляется не больше одного
+ * снапшота хаба с итоговым состоянием за пакет или окно. В формате
+ * {@link AggregationProperties.SnapshotFormat#DELTA} вместо полного снапшота отправляются
+ * только датчики, изменившиеся с предыдущей отправки хаба ({@link SnapshotDeltaTracker}).
+ * <p>
+ * С упорядочиванием ({@link AggregationProperties.Reorder}) события проходят через буфер
+ * партиции ({@link EventReorderBuffer}) и применяются в конце пакета или по событию простоя
+ * в порядке времени события; офсеты коммитятся только до первого события в буфере.
+ * <p>
+ * В транзакционном режиме ({@link AggregationProperties.Publishing#isTransactional()}) вся
+ * обработка пакета или события простоя выполняется в одной транзакции продюсера: снапшоты
+ * и офсеты ({@code sendOffsetsToTransaction}) фиксируются вместе. Отметка позиции в журнале
+ * пишется до фиксации транзакции, а контрольная точка и вытеснение хабов - после. Если
+ * транзакция прервана, состояние партиций потока откатывается к закоммиченным офсетам.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class AggregationStarter {
 
-    private final SnapshotAggregator snapshotAggregator;
+    private final SnapshotShardRegistry snapshotShardRegistry;
+    private final AggregationProperties aggregationProperties;
     private final KafkaTopicsProperties topicsProperties;
     private final KafkaTemplate<String, SensorsSnapshotAvro> snapshotKafkaTemplate;
-    
+    private final KafkaTemplate<String, SensorsSnapshotDeltaAvro> snapshotDeltaKafkaTemplate;
+
     @KafkaListener(
             topics = "${kafka.topic.sensors}",
             containerFactory = "sensorEventListenerFactory"
     )
     public void handleSensorEvents(
             @Payload List<ConsumerRecord<String, SensorEventAvro>> records,
-            Acknowledgment acknowledgment
+            Acknowledgment acknowledgment,
+            Consumer<?, ?> consumer
     ) {
         if (records.isEmpty()) {
             return;
@@ -41,35 +84,450 @@ public class AggregationStarter {
 
         log.info("Received {} events from Kafka", records.size());
 
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        if (publishing.getCoalescing() != AggregationProperties.Coalescing.NONE) {
+            inTransaction(consumer, () -> handleCoalesced(records, acknowledgment, consumer));
+        } else if (publishing.isPipelined() || isReordering() || isTransactional()) {
+            inTransaction(consumer, () -> handlePipelined(records, acknowledgment, consumer));
+        } else {
+            handleSequential(records, acknowledgment);
+        }
+    }
+
+    /**
+     * Когда в партициях потока нет новых событий, выпускает события, прождавшие в буфере
+     * упорядочивания, и отправляет снапшоты, окно объединения которых истекло.
+     * Событие простоя публикуется в потоке слушателя, поэтому состояния партиций можно трогать без блокировок.
+     */
+    @EventListener
+    public void handleIdle(ListenerContainerIdleEvent event) {
+        if (event.getTopicPartitions() == null) {
+            return;
+        }
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        boolean idleWork = snapshotShardRegistry.shards(event.getTopicPartitions()).stream()
+                .anyMatch(shard -> shard.hasBufferedEvents()
+                        || publishing.getCoalescing() == AggregationProperties.Coalescing.NONE
+                        && shard.hasPendingSnapshots()
+                        || publishing.getCoalescing() == AggregationProperties.Coalescing.WINDOW
+                        && shard.isPublishDue(publishing.getCoalescingWindow()));
+        if (idleWork) {
+            inTransaction(event.getConsumer(), () -> handleIdlePartitions(event));
+        }
+    }
+
+    private void handleIdlePartitions(ListenerContainerIdleEvent event) {
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        if (publishing.getCoalescing() == AggregationProperties.Coalescing.NONE) {
+            List<SnapshotShard> released = new ArrayList<>();
+            PipelinedSends sends = new PipelinedSends();
+            resendRequeued(released, event.getTopicPartitions(), sends);
+            if (isReordering()) {
+                releaseBuffered(released, event.getTopicPartitions(), sends);
+            }
+            sends.await(released);
+            flush(released);
+            commit(event.getConsumer(), released);
+        } else if (isReordering()) {
+            List<SnapshotShard> released = new ArrayList<>();
+            releaseBuffered(released, event.getTopicPartitions(), SnapshotShard::defer);
+            if (publishing.getCoalescing() == AggregationProperties.Coalescing.BATCH) {
+                publishPending(released);
+                commit(event.getConsumer(), released);
+            }
+        }
+        if (publishing.getCoalescing() != AggregationProperties.Coalescing.WINDOW) {
+            return;
+        }
+        List<SnapshotShard> due = snapshotShardRegistry.shards(event.getTopicPartitions()).stream()
+                .filter(shard -> shard.isPublishDue(publishing.getCoalescingWindow()))
+                .toList();
+        if (!due.isEmpty()) {
+            publishPending(due);
+            commit(event.getConsumer(), due);
+        }
+    }
+
+    private void handlePipelined(List<ConsumerRecord<String, SensorEventAvro>> records,
+                                 Acknowledgment acknowledgment,
+                                 Consumer<?, ?> consumer) {
+        List<SnapshotShard> shards = new ArrayList<>();
+        // Снапшот собирается и сериализуется внутри send, поэтому дальнейшие изменения состояния его не затрагивают
+        PipelinedSends publisher = new PipelinedSends();
+
+        // Сначала отправляются хабы, снапшоты которых не дошли при предыдущей обработке
+        resendRequeued(shards, consumer.assignment(), publisher);
+
+        SnapshotShard shard = null;
+        for (ConsumerRecord<String, SensorEventAvro> record : records) {
+            if (!belongsTo(shard, record)) {
+                shard = snapshotShardRegistry.shard(record.topic(), record.partition());
+                if (!shards.contains(shard)) {
+                    shards.add(shard);
+                }
+            }
+
+            SnapshotShard target = shard;
+            target.offer(record.offset(), record.value(), (offset, event) -> apply(target, offset, event, publisher));
+            shard.advance(record.offset());
+        }
+        if (isReordering()) {
+            releaseBuffered(shards, consumer.assignment(), publisher);
+        }
+
+        // Ждем подтверждения всех отправок пакета
+        publisher.await(shards);
+        log.debug("Sent {} snapshots for {} events", publisher.size(), records.size());
+
+        flush(shards);
+
+        // Коммитим офсеты всего пакета
+        acknowledge(acknowledgment, consumer, shards);
+    }
+
+    /**
+     * Объединение снапшотов: изменения хабов копятся в состоянии партиции, а отправляется
+     * только последний снапшот хаба. В режиме пакета он уходит в конце пакета, в режиме окна -
+     * когда окно партиции истекло; до этого офсеты партиции не коммитятся, чтобы при сбое
+     * события окна были прочитаны повторно.
+     */
+    private void handleCoalesced(List<ConsumerRecord<String, SensorEventAvro>> records,
+                                 Acknowledgment acknowledgment,
+                                 Consumer<?, ?> consumer) {
+        List<SnapshotShard> shards = new ArrayList<>();
+
+        SnapshotShard shard = null;
+        for (ConsumerRecord<String, SensorEventAvro> record : records) {
+            if (!belongsTo(shard, record)) {
+                shard = snapshotShardRegistry.shard(record.topic(), record.partition());
+                shards.add(shard);
+            }
+
+            SnapshotShard target = shard;
+            target.offer(record.offset(), record.value(),
+                    (offset, event) -> apply(target, offset, event, SnapshotShard::defer));
+            shard.advance(record.offset());
+        }
+        if (isReordering()) {
+            releaseBuffered(shards, consumer.assignment(), SnapshotShard::defer);
+        }
+
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        if (publishing.getCoalescing() == AggregationProperties.Coalescing.BATCH) {
+            publishPending(shards);
+            acknowledge(acknowledgment, consumer, shards);
+            return;
+        }
+
+        // Партиции потока, не попавшие в пакет, тоже могут ждать отправки
+        List<SnapshotShard> due = snapshotShardRegistry.shards(consumer.assignment()).stream()
+                .filter(candidate -> !candidate.hasPendingSnapshots()
+                        || candidate.isPublishDue(publishing.getCoalescingWindow()))
+                .toList();
+        publishPending(due);
+        commit(consumer, due);
+    }
+
+    /**
+     * Отправляет отложенные снапшоты партиций и после подтверждения фиксирует их журналы.
+     * При ошибке снапшоты возвращаются в очередь партиций, чтобы уйти при повторной обработке пакета.
+     */
+    private void publishPending(List<SnapshotShard> shards) {
+        Map<SnapshotShard, List<HubState>> drained = new LinkedHashMap<>();
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        for (SnapshotShard shard : shards) {
+            List<HubState> hubs = shard.drainPendingSnapshots();
+            drained.put(shard, hubs);
+            hubs.forEach(hub -> sends.add(send(shard, hub)));
+        }
+
+        try {
+            await(sends, shards);
+        } catch (RuntimeException e) {
+            drained.forEach(SnapshotShard::requeue);
+            throw e;
+        }
+        log.debug("Sent {} coalesced snapshots", sends.size());
+
+        flush(shards);
+    }
+
+    private void handleSequential(List<ConsumerRecord<String, SensorEventAvro>> records,
+                                  Acknowledgment acknowledgment) {
         // Обрабатываем каждое событие
+        SnapshotShard shard = null;
         for (ConsumerRecord<String, SensorEventAvro> record : records) {
             SensorEventAvro event = record.value();
 
+            // Записи пакета сгруппированы по партициям - состояние меняется только на границе групп
+            if (!belongsTo(shard, record)) {
+                if (shard != null) {
+                    shard.flush();
+                }
+                shard = snapshotShardRegistry.shard(record.topic(), record.partition());
+                // Хабы, снапшоты которых не дошли при предыдущей обработке, отправляются первыми
+                List<HubState> requeued = shard.drainPendingSnapshots();
+                for (int i = 0; i < requeued.size(); i++) {
+                    try {
+                        sendSync(shard, requeued.get(i));
+                    } catch (RuntimeException e) {
+                        shard.requeue(requeued.subList(i + 1, requeued.size()));
+                        throw e;
+                    }
+                }
+            }
+
             // Обновляем состояние снапшота
-            Optional<SensorsSnapshotAvro> updatedSnapshot = snapshotAggregator.updateState(event);
+            HubState updatedHub = shard.getAggregator().update(event);
 
             // Если снапшот был обновлен, отправляем его в Kafka
-            if (updatedSnapshot.isPresent()) {
-                SensorsSnapshotAvro snapshot = updatedSnapshot.get();
-                log.info("Sending snapshot for hub {} to Kafka topic {}",
-                        snapshot.getHubId(), topicsProperties.getSnapshots());
-
-                try {
-                    snapshotKafkaTemplate.send(
-                            topicsProperties.getSnapshots(),
-                            null,
-                            snapshot.getTimestamp().toEpochMilli(),
-                            snapshot.getHubId(),
-                            snapshot
-                    ).get(); // Ждем подтверждения отправки
-                } catch (Exception e) {
-                    log.error("Error sending snapshot to Kafka", e);
-                    throw new RuntimeException("Failed to send snapshot", e);
-                }
+            if (updatedHub != null) {
+                shard.record(record.offset(), event);
+                sendSync(shard, updatedHub);
             }
 
+            shard.advance(record.offset());
+
             // Коммитим офсет после успешной обработки каждого события
             acknowledgment.acknowledge();
         }
+
+        // Сбрасываем журнал состояния последней партиции пакета
+        shard.flush();
+    }
+
+    /**
+     * Отправляет снапшот хаба и ждет подтверждения. При ошибке хаб возвращается в очередь партиции:
+     * событие уже применено к состоянию, и при повторном чтении снапшот не построится.
+     */
+    private void sendSync(SnapshotShard shard, HubState hub) {
+        try {
+            send(shard, hub).get(); // Ждем подтверждения отправки
+        } catch (Exception e) {
+            shard.requeue(List.of(hub));
+            shard.getDeltas().requireKeyframes();
+            log.error("Error sending snapshot to Kafka", e);
+            throw new RuntimeException("Failed to send snapshot", e);
+        }
+    }
+
+    /**
+     * Ждет подтверждения отправок. При ошибке следующие снапшоты партиций будут опорными
+     * кадрами, чтобы потребители дельт не ждали потерянных версий.
+     */
+    private void await(List<CompletableFuture<?>> sends, List<SnapshotShard> shards) {
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get();
+        } catch (Exception e) {
+            shards.forEach(shard -> shard.getDeltas().requireKeyframes());
+            log.error("Error sending snapshots to Kafka", e);
+            throw new RuntimeException("Failed to send snapshots", e);
+        }
+    }
+
+    /**
+     * Передает на отправку хабы, возвращенные в очередь партиций после неудачной отправки,
+     * и добавляет эти партиции к {@code shards}.
+     */
+    private void resendRequeued(List<SnapshotShard> shards, Collection<TopicPartition> partitions,
+                                BiConsumer<SnapshotShard, HubState> publisher) {
+        for (SnapshotShard shard : snapshotShardRegistry.shards(partitions)) {
+            if (!shard.hasPendingSnapshots()) {
+                continue;
+            }
+            if (!shards.contains(shard)) {
+                shards.add(shard);
+            }
+            List<HubState> hubs = shard.drainPendingSnapshots();
+            log.info("Resending {} snapshots of partition {} after a failed send", hubs.size(), shard.getPartition());
+            hubs.forEach(hub -> publisher.accept(shard, hub));
+        }
+    }
+
+    /**
+     * Применяет событие к состоянию партиции и передает изменившийся хаб на отправку.
+     */
+    private static boolean apply(SnapshotShard shard, long offset, SensorEventAvro event,
+                                 BiConsumer<SnapshotShard, HubState> publisher) {
+        HubState updatedHub = shard.getAggregator().update(event);
+        if (updatedHub == null) {
+            return false;
+        }
+        shard.record(offset, event);
+        publisher.accept(shard, updatedHub);
+        return true;
+    }
+
+    /**
+     * Применяет события, выпущенные из буферов упорядочивания партиций, и добавляет
+     * эти партиции к {@code shards}, чтобы их журналы и офсеты тоже были зафиксированы.
+     */
+    private void releaseBuffered(List<SnapshotShard> shards, Collection<TopicPartition> partitions,
+                                 BiConsumer<SnapshotShard, HubState> publisher) {
+        for (SnapshotShard shard : snapshotShardRegistry.shards(partitions)) {
+            if (!shard.hasBufferedEvents()) {
+                continue;
+            }
+            if (!shards.contains(shard)) {
+                shards.add(shard);
+            }
+            shard.releaseBuffered((offset, event) -> apply(shard, offset, event, publisher));
+        }
+    }
+
+    /**
+     * Коммитит офсеты пакета. С упорядочиванием офсеты партиций коммитятся только
+     * до первого события в буфере, а в транзакционном режиме - в транзакции,
+     * поэтому в этих случаях офсеты передаются явно.
+     */
+    private void acknowledge(Acknowledgment acknowledgment, Consumer<?, ?> consumer, List<SnapshotShard> shards) {
+        if (isReordering() || isTransactional()) {
+            commit(consumer, shards);
+        } else {
+            acknowledgment.acknowledge();
+        }
+    }
+
+    /**
+     * Фиксирует журналы партиций после подтверждения отправки их снапшотов.
+     * В транзакционном режиме контрольная точка и вытеснение откладываются до фиксации транзакции.
+     */
+    private void flush(List<SnapshotShard> shards) {
+        if (isTransactional()) {
+            shards.forEach(SnapshotShard::flushJournal);
+        } else {
+            shards.forEach(SnapshotShard::flush);
+        }
+    }
+
+    /**
+     * Выполняет обработку в транзакции продюсера снапшотов, если включен транзакционный режим.
+     * Если транзакция прервана, состояние партиций потока откатывается к закоммиченным офсетам.
+     */
+    private void inTransaction(Consumer<?, ?> consumer, Runnable work) {
+        if (!isTransactional()) {
+            work.run();
+            return;
+        }
+        try {
+            if (isDeltaFormat()) {
+                snapshotDeltaKafkaTemplate.executeInTransaction(operations -> {
+                    work.run();
+                    return null;
+                });
+            } else {
+                snapshotKafkaTemplate.executeInTransaction(operations -> {
+                    work.run();
+                    return null;
+                });
+            }
+        } catch (RuntimeException e) {
+            snapshotShardRegistry.rollback(consumer, consumer.assignment());
+            throw e;
+        }
+        snapshotShardRegistry.shards(consumer.assignment()).forEach(SnapshotShard::compact);
+    }
+
+    private boolean isReordering() {
+        return aggregationProperties.getReorder().isEnabled();
+    }
+
+    private boolean isTransactional() {
+        return aggregationProperties.getPublishing().isTransactional();
+    }
+
+    private boolean isDeltaFormat() {
+        return aggregationProperties.getPublishing().getFormat() == AggregationProperties.SnapshotFormat.DELTA;
+    }
+
+    /**
+     * Коммитит офсеты партиций, снапшоты которых отправлены: в транзакционном режиме -
+     * в текущей транзакции продюсера, иначе напрямую через консьюмер.
+     */
+    private void commit(Consumer<?, ?> consumer, List<SnapshotShard> shards) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (SnapshotShard shard : shards) {
+            if (shard.getCommittableOffset() >= 0) {
+                offsets.put(shard.getPartition(), new OffsetAndMetadata(shard.getCommittableOffset()));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (!isTransactional()) {
+            consumer.commitSync(offsets);
+        } else if (isDeltaFormat()) {
+            snapshotDeltaKafkaTemplate.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+        } else {
+            snapshotKafkaTemplate.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+        }
+    }
+
+    /**
+     * Собирает снапшот хаба в формате топика и отправляет его.
+     */
+    private CompletableFuture<?> send(SnapshotShard shard, HubState hub) {
+        log.debug("Sending snapshot for hub {} to Kafka topic {}",
+                hub.getHubId(), topicsProperties.getSnapshots());
+
+        AggregationProperties.Publishing publishing = aggregationProperties.getPublishing();
+        if (isDeltaFormat()) {
+            SensorsSnapshotDeltaAvro delta = shard.getDeltas().next(hub, publishing.getKeyframeInterval());
+            return snapshotDeltaKafkaTemplate.send(
+                    topicsProperties.getSnapshots(),
+                    null,
+                    delta.getTimestamp().toEpochMilli(),
+                    delta.getHubId(),
+                    delta
+            );
+        }
+
+        SensorsSnapshotAvro snapshot = hub.toSnapshot();
+        hub.clearChanges();
+        return snapshotKafkaTemplate.send(
+                topicsProperties.getSnapshots(),
+                null,
+                snapshot.getTimestamp().toEpochMilli(),
+                snapshot.getHubId(),
+                snapshot
+        );
+    }
+
+    /**
+     * Отправки конвейерного режима вместе с хабами, которые в них ушли.
+     */
+    private final class PipelinedSends implements BiConsumer<SnapshotShard, HubState> {
+
+        private final List<CompletableFuture<?>> sends = new ArrayList<>();
+        private final Map<SnapshotShard, List<HubState>> sent = new LinkedHashMap<>();
+
+        @Override
+        public void accept(SnapshotShard shard, HubState hub) {
+            sends.add(send(shard, hub));
+            sent.computeIfAbsent(shard, key -> new ArrayList<>()).add(hub);
+        }
+
+        int size() {
+            return sends.size();
+        }
+
+        /**
+         * Ждет подтверждения отправок. При ошибке все отправленные хабы возвращаются в очередь
+         * своих партиций: события, изменившие их, уже применены к состоянию, и повторное чтение
+         * пакета снапшоты не построит.
+         */
+        void await(List<SnapshotShard> shards) {
+            try {
+                AggregationStarter.this.await(sends, shards);
+            } catch (RuntimeException e) {
+                sent.forEach(SnapshotShard::requeue);
+                throw e;
+            }
+        }
+    }
+
+    private static boolean belongsTo(SnapshotShard shard, ConsumerRecord<?, ?> record) {
+        return shard != null && shard.getPartition().partition() == record.partition()
+                && shard.getPartition().topic().equals(record.topic());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Буфер упорядочивания событий одной партиции по времени события.
+ * <p>
+ * Для каждого хаба ведется водяной знак - время самого нового события хаба минус
+ * {@link AggregationProperties.Reorder#getMaxOutOfOrderness()}. События не старше водяного знака
+ * ждут в буфере хаба и выпускаются ({@link #release(Sink)}) по возрастанию времени события,
+ * когда водяной знак их пройдет или когда они прождали столько же по часам агрегатора
+ * (хаб замолчал). События старше водяного знака опоздали: в пределах
+ * {@link AggregationProperties.Reorder#getAllowedLateness()} они применяются сразу,
+ * иначе отбрасываются. Опоздавшее событие учитывается в метриках по результату применения:
+ * если у датчика уже есть более новое показание, событие тоже отброшено.
+ * <p>
+ * Водяные знаки хранятся только в памяти и после перезапуска строятся заново.
+ * <p>
+ * Экземпляр не потокобезопасен: им владеет поток, которому назначена партиция.
+ */
+@Slf4j
+public class EventReorderBuffer {
+
+    private static final Comparator<BufferedEvent> EVENT_TIME_ORDER =
+            Comparator.comparingLong((BufferedEvent event) -> event.timestamp)
+                    .thenComparingLong(event -> event.offset);
+
+    /**
+     * Получатель выпущенных событий.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * Применяет событие к состоянию.
+         *
+         * @return true, если событие изменило состояние
+         */
+        boolean accept(long offset, SensorEventAvro event);
+    }
+
+    private final long maxOutOfOrderness;
+    private final long allowedLateness;
+    private final EventTimeMetrics metrics;
+
+    private final Map<String, HubBuffer> hubs = new HashMap<>();
+
+    /**
+     * Хабы, у которых есть события в буфере.
+     */
+    private final Set<HubBuffer> waiting = new LinkedHashSet<>();
+
+    /**
+     * События в порядке офсетов; выпущенные снимаются с головы, чтобы знать
+     * первый офсет, который еще нельзя коммитить.
+     */
+    private final ArrayDeque<BufferedEvent> arrivals = new ArrayDeque<>();
+    private int buffered;
+
+    public EventReorderBuffer(AggregationProperties.Reorder properties, EventTimeMetrics metrics) {
+        this.maxOutOfOrderness = properties.getMaxOutOfOrderness().toMillis();
+        this.allowedLateness = properties.getAllowedLateness().toMillis();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Принимает событие партиции. Событие, опоздавшее в пределах допустимого,
+     * сразу передается в {@code lateSink}.
+     */
+    public void offer(long offset, SensorEventAvro event, Sink lateSink) {
+        long timestamp = event.getTimestamp().toEpochMilli();
+        HubBuffer hub = hubs.computeIfAbsent(event.getHubId(), id -> new HubBuffer());
+
+        if (timestamp < hub.watermark) {
+            if (timestamp < hub.watermark - allowedLateness) {
+                metrics.droppedTooLate();
+                log.debug("Event for sensor {} of hub {} at {} is behind watermark {} by more than allowed, dropping",
+                        event.getId(), event.getHubId(), timestamp, hub.watermark);
+            } else if (lateSink.accept(offset, event)) {
+                metrics.late();
+            } else {
+                metrics.droppedSuperseded();
+            }
+            return;
+        }
+
+        BufferedEvent bufferedEvent = new BufferedEvent(offset, event, timestamp, System.currentTimeMillis());
+        hub.queue.add(bufferedEvent);
+        arrivals.addLast(bufferedEvent);
+        waiting.add(hub);
+        buffered++;
+        hub.watermark = Math.max(hub.watermark, timestamp - maxOutOfOrderness);
+    }
+
+    /**
+     * Выпускает события, которые прошел водяной знак хаба или которые ждут дольше допустимого,
+     * в порядке времени события каждого хаба.
+     */
+    public void release(Sink sink) {
+        long expired = System.currentTimeMillis() - maxOutOfOrderness;
+        Iterator<HubBuffer> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            HubBuffer hub = iterator.next();
+            BufferedEvent next;
+            while ((next = hub.queue.peek()) != null
+                    && (next.timestamp <= hub.watermark || next.arrivedAt <= expired)) {
+                hub.queue.poll();
+                // Выпущенное по часам агрегатора событие тоже сдвигает водяной знак
+                hub.watermark = Math.max(hub.watermark, next.timestamp);
+                next.released = true;
+                buffered--;
+                sink.accept(next.offset, next.event);
+            }
+            if (hub.queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        while (!arrivals.isEmpty() && arrivals.peekFirst().released) {
+            arrivals.pollFirst();
+        }
+    }
+
+    public boolean hasBufferedEvents() {
+        return buffered > 0;
+    }
+
+    /**
+     * Количество событий в буфере.
+     */
+    public int size() {
+        return buffered;
+    }
+
+    /**
+     * Офсет первого события в буфере или -1, если буфер пуст.
+     */
+    public long firstBufferedOffset() {
+        for (BufferedEvent event : arrivals) {
+            if (!event.released) {
+                return event.offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Забывает водяной знак хаба, вытесненного из памяти, если у него нет событий в буфере.
+     */
+    public void forget(String hubId) {
+        HubBuffer hub = hubs.get(hubId);
+        if (hub != null && hub.queue.isEmpty()) {
+            hubs.remove(hubId);
+        }
+    }
+
+    private static final class HubBuffer {
+        private final PriorityQueue<BufferedEvent> queue = new PriorityQueue<>(EVENT_TIME_ORDER);
+        private long watermark = Long.MIN_VALUE;
+    }
+
+    private static final class BufferedEvent {
+        private final long offset;
+        private final SensorEventAvro event;
+        private final long timestamp;
+        private final long arrivedAt;
+        private boolean released;
+
+        private BufferedEvent(long offset, SensorEventAvro event, long timestamp, long arrivedAt) {
+            this.offset = offset;
+            this.event = event;
+            this.timestamp = timestamp;
+            this.arrivedAt = arrivedAt;
+        }
+    }
+}
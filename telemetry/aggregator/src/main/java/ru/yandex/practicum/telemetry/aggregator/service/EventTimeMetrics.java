@@ -0,0 +1,57 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Метрики упорядочивания событий по времени события.
+ * Количество событий в буферах публикует {@link SnapshotShardRegistry}.
+ */
+@Component
+public class EventTimeMetrics {
+
+    /**
+     * Метрики без реестра.
+     */
+    public static final EventTimeMetrics NOOP = new EventTimeMetrics(new CompositeMeterRegistry());
+
+    private final Counter late;
+    private final Counter droppedTooLate;
+    private final Counter droppedSuperseded;
+
+    @Autowired
+    public EventTimeMetrics(MeterRegistry registry) {
+        this.late = Counter.builder("aggregator.events.late")
+                .description("Events behind the hub watermark applied out of order")
+                .register(registry);
+        this.droppedTooLate = Counter.builder("aggregator.events.dropped")
+                .description("Late events that were not applied")
+                .tag("reason", "lateness")
+                .register(registry);
+        this.droppedSuperseded = Counter.builder("aggregator.events.dropped")
+                .description("Late events that were not applied")
+                .tag("reason", "superseded")
+                .register(registry);
+    }
+
+    void late() {
+        late.increment();
+    }
+
+    /**
+     * Событие отстало от водяного знака больше допустимого.
+     */
+    void droppedTooLate() {
+        droppedTooLate.increment();
+    }
+
+    /**
+     * Опоздавшее событие не применено: у датчика уже есть более новое показание.
+     */
+    void droppedSuperseded() {
+        droppedSuperseded.increment();
+    }
+}
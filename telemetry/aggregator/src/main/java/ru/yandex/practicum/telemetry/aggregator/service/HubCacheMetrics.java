@@ -0,0 +1,63 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики вытеснения состояний хабов из памяти.
+ * Количество хабов в памяти публикует {@link SnapshotShardRegistry}.
+ */
+@Component
+public class HubCacheMetrics {
+
+    /**
+     * Метрики без реестра - для агрегатора без ограничения памяти.
+     */
+    public static final HubCacheMetrics NOOP = new HubCacheMetrics(new CompositeMeterRegistry());
+
+    private final Counter idleEvictions;
+    private final Counter sizeEvictions;
+    private final Counter reloads;
+    private final Counter limitUnenforced;
+    private final Timer reloadLatency;
+
+    @Autowired
+    public HubCacheMetrics(MeterRegistry registry) {
+        this.idleEvictions = Counter.builder("aggregator.hubs.evictions")
+                .description("Hubs evicted from memory")
+                .tag("reason", "idle")
+                .register(registry);
+        this.sizeEvictions = Counter.builder("aggregator.hubs.evictions")
+                .description("Hubs evicted from memory")
+                .tag("reason", "size")
+                .register(registry);
+        this.reloads = Counter.builder("aggregator.hubs.reloads")
+                .description("Evicted hubs loaded back on a new event")
+                .register(registry);
+        this.limitUnenforced = Counter.builder("aggregator.hubs.limit.unenforced")
+                .description("Eviction passes skipped over the hub limit because there is no state store to spill to")
+                .register(registry);
+        this.reloadLatency = Timer.builder("aggregator.hubs.reload.latency")
+                .description("Time to load an evicted hub back into memory")
+                .register(registry);
+    }
+
+    void evicted(boolean idle) {
+        (idle ? idleEvictions : sizeEvictions).increment();
+    }
+
+    void limitUnenforced() {
+        limitUnenforced.increment();
+    }
+
+    void reloaded(long nanos) {
+        reloads.increment();
+        reloadLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.io.IOException;
+
+/**
+ * Хранилище состояний хабов, вытесненных из памяти агрегатора.
+ */
+public interface HubSpill {
+
+    /**
+     * Сохраняет состояние хаба перед удалением из памяти.
+     */
+    void spill(HubState hub) throws IOException;
+
+    /**
+     * Загружает сохраненное состояние хаба.
+     *
+     * @return снапшот хаба или null, если хаб не вытеснялся
+     */
+    SensorsSnapshotAvro reload(String hubId) throws IOException;
+}
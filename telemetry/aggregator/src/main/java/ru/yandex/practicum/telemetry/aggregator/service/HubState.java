@@ -0,0 +1,364 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Состояние датчиков одного хаба в компактном столбцовом виде.
+ * <p>
+ * Идентификатор датчика один раз отображается в индекс, а показания хранятся
+ * в примитивных массивах по индексу: тип показаний, метка времени в миллисекундах
+ * и до трех целочисленных значений. Назначение значений зависит от типа:
+ * <ul>
+ *     <li>климат - температура, влажность, CO2;</li>
+ *     <li>свет - качество связи, освещенность;</li>
+ *     <li>движение - качество связи, движение (0/1), напряжение;</li>
+ *     <li>переключатель - состояние (0/1);</li>
+ *     <li>температура - градусы Цельсия и Фаренгейта; собственная метка времени показаний
+ *     хранится в отдельном столбце, создаваемом при первом датчике температуры.</li>
+ * </ul>
+ * В показаниях датчика температуры идентификаторы датчика и хаба совпадают с идентификаторами
+ * события (так их заполняет маппер), поэтому отдельно не хранятся.
+ * <p>
+ * Обновление известного датчика не создает объектов. {@link SensorsSnapshotAvro} собирается
+ * только при отправке ({@link #toSnapshot()}, {@link #changedStates()}) и сохранении.
+ * Датчики, изменившиеся с последней отправки, отмечаются битами, которые сбрасывает {@link #clearChanges()}.
+ * <p>
+ * Экземпляр не потокобезопасен: им владеет поток, которому назначена партиция хаба.
+ */
+public final class HubState {
+
+    private static final byte CLIMATE = 0;
+    private static final byte LIGHT = 1;
+    private static final byte MOTION = 2;
+    private static final byte SWITCH = 3;
+    private static final byte TEMPERATURE = 4;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final String hubId;
+    private long timestamp;
+
+    private int size;
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] values0 = new int[INITIAL_CAPACITY];
+    private int[] values1 = new int[INITIAL_CAPACITY];
+    private int[] values2 = new int[INITIAL_CAPACITY];
+    private long[] payloadTimestamps;
+
+    /**
+     * Хеш-таблица с открытой адресацией: индекс датчика + 1, 0 - пустая ячейка.
+     */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    private long[] changed = new long[1];
+    private int changedCount;
+
+    /**
+     * Время последнего события хаба по часам агрегатора, для вытеснения простаивающих хабов.
+     */
+    long lastAccess;
+
+    private boolean spilled;
+
+    HubState(String hubId) {
+        this.hubId = hubId;
+    }
+
+    public String getHubId() {
+        return hubId;
+    }
+
+    /**
+     * Количество датчиков хаба.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Загружено ли состояние из {@link HubSpill}, причем сохраненная там копия
+     * еще не заменена контрольной точкой.
+     */
+    public boolean isSpilled() {
+        return spilled;
+    }
+
+    public void setSpilled(boolean spilled) {
+        this.spilled = spilled;
+    }
+
+    /**
+     * Есть ли датчики, изменившиеся с последней отправки.
+     */
+    public boolean hasChanges() {
+        return changedCount > 0;
+    }
+
+    /**
+     * Применяет событие датчика.
+     *
+     * @return true, если состояние хаба изменилось
+     */
+    boolean update(SensorEventAvro event) {
+        long eventTimestamp = event.getTimestamp().toEpochMilli();
+        Object payload = event.getPayload();
+        int index = indexOf(event.getId());
+
+        if (index < 0) {
+            index = add(event.getId());
+        } else {
+            // Устаревшее событие
+            if (timestamps[index] > eventTimestamp) {
+                return false;
+            }
+            // Данные не изменились
+            if (sameData(index, payload)) {
+                return false;
+            }
+        }
+
+        write(index, eventTimestamp, payload);
+        timestamp = eventTimestamp;
+        markChanged(index);
+        return true;
+    }
+
+    /**
+     * Загружает состояние из снапшота, например из локального хранилища.
+     */
+    void load(SensorsSnapshotAvro snapshot) {
+        for (Map.Entry<String, SensorStateAvro> entry : snapshot.getSensorsState().entrySet()) {
+            int index = indexOf(entry.getKey());
+            if (index < 0) {
+                index = add(entry.getKey());
+            }
+            write(index, entry.getValue().getTimestamp().toEpochMilli(), entry.getValue().getData());
+        }
+        timestamp = snapshot.getTimestamp().toEpochMilli();
+    }
+
+    /**
+     * Собирает полный снапшот хаба.
+     */
+    public SensorsSnapshotAvro toSnapshot() {
+        return SensorsSnapshotAvro.newBuilder()
+                .setHubId(hubId)
+                .setTimestamp(getTimestamp())
+                .setSensorsState(states())
+                .build();
+    }
+
+    /**
+     * Метка времени последнего изменения хаба.
+     */
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(timestamp);
+    }
+
+    /**
+     * Состояния всех датчиков хаба.
+     */
+    public Map<String, SensorStateAvro> states() {
+        Map<String, SensorStateAvro> states = new HashMap<>(capacityFor(size));
+        for (int index = 0; index < size; index++) {
+            states.put(ids[index], state(index));
+        }
+        return states;
+    }
+
+    /**
+     * Состояния датчиков, изменившихся с последнего {@link #clearChanges()}.
+     */
+    public Map<String, SensorStateAvro> changedStates() {
+        Map<String, SensorStateAvro> states = new HashMap<>(capacityFor(changedCount));
+        for (int word = 0; word < changed.length; word++) {
+            long bits = changed[word];
+            while (bits != 0) {
+                int index = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                states.put(ids[index], state(index));
+                bits &= bits - 1;
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Сбрасывает отметки изменившихся датчиков после отправки.
+     */
+    public void clearChanges() {
+        if (changedCount > 0) {
+            Arrays.fill(changed, 0L);
+            changedCount = 0;
+        }
+    }
+
+    private boolean sameData(int index, Object payload) {
+        byte type = types[index];
+        if (payload instanceof SwitchSensorAvro p) {
+            return type == SWITCH && values0[index] == bit(p.getState());
+        }
+        if (payload instanceof MotionSensorAvro p) {
+            return type == MOTION
+                    && values1[index] == bit(p.getMotion())
+                    && values0[index] == p.getLinkQuality()
+                    && values2[index] == p.getVoltage();
+        }
+        if (payload instanceof LightSensorAvro p) {
+            return type == LIGHT
+                    && values1[index] == p.getLuminosity()
+                    && values0[index] == p.getLinkQuality();
+        }
+        if (payload instanceof ClimateSensorAvro p) {
+            return type == CLIMATE
+                    && values0[index] == p.getTemperatureC()
+                    && values1[index] == p.getHumidity()
+                    && values2[index] == p.getCo2Level();
+        }
+        if (payload instanceof TemperatureSensorAvro p) {
+            return type == TEMPERATURE
+                    && values0[index] == p.getTemperatureC()
+                    && values1[index] == p.getTemperatureF()
+                    && payloadTimestamps[index] == p.getTimestamp().toEpochMilli();
+        }
+        throw unknownPayload(payload);
+    }
+
+    private void write(int index, long stateTimestamp, Object payload) {
+        timestamps[index] = stateTimestamp;
+        if (payload instanceof SwitchSensorAvro p) {
+            set(index, SWITCH, bit(p.getState()), 0, 0);
+        } else if (payload instanceof MotionSensorAvro p) {
+            set(index, MOTION, p.getLinkQuality(), bit(p.getMotion()), p.getVoltage());
+        } else if (payload instanceof LightSensorAvro p) {
+            set(index, LIGHT, p.getLinkQuality(), p.getLuminosity(), 0);
+        } else if (payload instanceof ClimateSensorAvro p) {
+            set(index, CLIMATE, p.getTemperatureC(), p.getHumidity(), p.getCo2Level());
+        } else if (payload instanceof TemperatureSensorAvro p) {
+            set(index, TEMPERATURE, p.getTemperatureC(), p.getTemperatureF(), 0);
+            if (payloadTimestamps == null) {
+                payloadTimestamps = new long[ids.length];
+            }
+            payloadTimestamps[index] = p.getTimestamp().toEpochMilli();
+        } else {
+            throw unknownPayload(payload);
+        }
+    }
+
+    private void set(int index, byte type, int value0, int value1, int value2) {
+        types[index] = type;
+        values0[index] = value0;
+        values1[index] = value1;
+        values2[index] = value2;
+    }
+
+    private SensorStateAvro state(int index) {
+        return SensorStateAvro.newBuilder()
+                .setTimestamp(Instant.ofEpochMilli(timestamps[index]))
+                .setData(payload(index))
+                .build();
+    }
+
+    private Object payload(int index) {
+        return switch (types[index]) {
+            case CLIMATE -> new ClimateSensorAvro(values0[index], values1[index], values2[index]);
+            case LIGHT -> new LightSensorAvro(values0[index], values1[index]);
+            case MOTION -> new MotionSensorAvro(values0[index], values1[index] != 0, values2[index]);
+            case SWITCH -> new SwitchSensorAvro(values0[index] != 0);
+            case TEMPERATURE -> new TemperatureSensorAvro(ids[index], hubId,
+                    Instant.ofEpochMilli(payloadTimestamps[index]), values0[index], values1[index]);
+            default -> throw new IllegalStateException("Unknown sensor type " + types[index]);
+        };
+    }
+
+    private int indexOf(String id) {
+        int mask = slots.length - 1;
+        for (int slot = mix(id.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (ids[entry - 1].equals(id)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private int add(String id) {
+        if (size == ids.length) {
+            grow();
+        }
+        int index = size++;
+        ids[index] = id;
+        insertSlot(id, index);
+        return index;
+    }
+
+    private void insertSlot(String id, int index) {
+        int mask = slots.length - 1;
+        int slot = mix(id.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        types = Arrays.copyOf(types, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        values0 = Arrays.copyOf(values0, capacity);
+        values1 = Arrays.copyOf(values1, capacity);
+        values2 = Arrays.copyOf(values2, capacity);
+        if (payloadTimestamps != null) {
+            payloadTimestamps = Arrays.copyOf(payloadTimestamps, capacity);
+        }
+        changed = Arrays.copyOf(changed, (capacity + Long.SIZE - 1) / Long.SIZE);
+
+        // Таблица остается заполненной не больше чем наполовину
+        slots = new int[capacity * 2];
+        for (int index = 0; index < size; index++) {
+            insertSlot(ids[index], index);
+        }
+    }
+
+    private void markChanged(int index) {
+        long bit = 1L << index;
+        int word = index >>> 6;
+        if ((changed[word] & bit) == 0) {
+            changed[word] |= bit;
+            changedCount++;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    private static int capacityFor(int entries) {
+        return (int) (entries / 0.75f) + 1;
+    }
+
+    private static IllegalArgumentException unknownPayload(Object payload) {
+        return new IllegalArgumentException("Unknown sensor payload: "
+                + (payload == null ? null : payload.getClass().getName()));
+    }
+}
@@ -1,87 +1,215 @@
 package ru.yandex.practicum.telemetry.aggregator.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
-import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
- * Сервис для агрегации событий датчиков в снапшоты.
- * Хранит текущее состояние всех хабов и их датчиков.
+ * Агрегация событий датчиков в снапшоты.
+ * Хранит текущее состояние хабов одной партиции топика событий.
+ * <p>
+ * Состояние хаба хранится в столбцовом виде ({@link HubState}) и изменяется на месте,
+ * поэтому повторные события известных датчиков не создают мусора, а
+ * {@link SensorsSnapshotAvro} собирается только для отправки.
+ * <p>
+ * Хабы хранятся в порядке последнего обращения. {@link #evict(int, Duration, Consumer)} вытесняет
+ * давно простаивающие хабы и хабы сверх лимита в {@link HubSpill}; при следующем событии
+ * хаб загружается обратно. Без {@link HubSpill} (хранилище выключено или отказало) хабы
+ * не вытесняются: снапшот хаба, построенный заново после вытеснения, содержал бы только
+ * датчики, приславшие события после него. Превышение лимита тогда только отмечается в метриках.
+ * <p>
+ * Экземпляр не потокобезопасен: им владеет поток слушателя, которому назначена партиция,
+ * а передача между потоками выполняется через {@link SnapshotShardRegistry}.
  */
 @Slf4j
-@Service
 public class SnapshotAggregator {
 
     /**
-     * Хранилище снапшотов для всех хабов.
-     * Ключ - идентификатор хаба, значение - снапшот состояния датчиков этого хаба.
+     * Состояния хабов партиции в порядке последнего обращения.
+     * Ключ - идентификатор хаба, значение - состояние датчиков этого хаба.
      */
-    private final Map<String, SensorsSnapshotAvro> snapshots = new HashMap<>();
+    private final Map<String, HubState> hubs = new LinkedHashMap<>(16, 0.75f, true);
+
+    private HubSpill spill;
+    private final HubCacheMetrics metrics;
+
+    /**
+     * Сообщалось ли уже, что лимит хабов превышен, а вытеснять некуда.
+     */
+    private boolean limitUnenforcedReported;
+
+    /**
+     * Агрегатор без вытеснения в хранилище.
+     */
+    public SnapshotAggregator() {
+        this(null, HubCacheMetrics.NOOP);
+    }
 
     /**
-     * Обновляет состояние датчика в снапшоте.
-     * Создает новый снапшот, если для данного хаба его еще не было.
+     * @param spill   хранилище вытесненных хабов или null
+     * @param metrics метрики вытеснения
+     */
+    public SnapshotAggregator(HubSpill spill, HubCacheMetrics metrics) {
+        this.spill = spill;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Обновляет состояние датчика и собирает снапшот хаба.
      *
      * @param event событие от датчика
      * @return Optional с обновленным снапшотом, если состояние изменилось, иначе Optional.empty()
+     * @see #update(SensorEventAvro)
      */
     public Optional<SensorsSnapshotAvro> updateState(SensorEventAvro event) {
-        // Получаем или создаем снапшот для данного хаба
-        SensorsSnapshotAvro snapshot = snapshots.computeIfAbsent(
-                event.getHubId(),
-                hubId -> SensorsSnapshotAvro.newBuilder()
-                        .setHubId(hubId)
-                        .setTimestamp(event.getTimestamp())
-                        .setSensorsState(new HashMap<>())
-                        .build()
-        );
-
-        // Проверяем, есть ли в снапшоте данные для данного датчика
-        Map<String, SensorStateAvro> sensorsState = snapshot.getSensorsState();
-        SensorStateAvro oldState = sensorsState.get(event.getId());
-
-        if (oldState != null) {
-            // Проверяем, не устарело ли полученное событие
-            if (oldState.getTimestamp().compareTo(event.getTimestamp()) > 0) {
-                log.info("Event for sensor {} is older than current state, ignoring. Old TS: {}, New TS: {}",
-                        event.getId(), oldState.getTimestamp(), event.getTimestamp());
-                return Optional.empty();
+        return Optional.ofNullable(update(event)).map(HubState::toSnapshot);
+    }
+
+    /**
+     * Обновляет состояние датчика на месте, без создания объектов для уже известных хаба и датчика.
+     * Создает состояние хаба, если для него еще не было событий.
+     *
+     * @param event событие от датчика
+     * @return состояние хаба, если оно изменилось, иначе null
+     */
+    public HubState update(SensorEventAvro event) {
+        HubState hub = hubs.get(event.getHubId());
+        if (hub == null) {
+            hub = reload(event.getHubId());
+            hubs.put(event.getHubId(), hub);
+        }
+        hub.lastAccess = System.currentTimeMillis();
+
+        if (!hub.update(event)) {
+            if (log.isTraceEnabled()) {
+                log.trace("Event for sensor {} of hub {} is outdated or unchanged, ignoring",
+                        event.getId(), event.getHubId());
             }
+            return null;
+        }
+        return hub;
+    }
+
+    /**
+     * Вытесняет хабы, простаивающие дольше {@code idleTimeout}, и самые давние хабы сверх
+     * {@code maxHubs}. Хабы с неотправленными изменениями не вытесняются.
+     * Вызывается после фиксации состояния партиции, чтобы вытесненное состояние
+     * не опережало сохраненную позицию. Без хранилища вытесненных хабов ничего не делает.
+     *
+     * @param evictedListener получает идентификаторы вытесненных хабов
+     * @return количество вытесненных хабов
+     */
+    public int evict(int maxHubs, Duration idleTimeout, Consumer<String> evictedListener) {
+        if (spill == null) {
+            reportUnenforcedLimit(maxHubs);
+            return 0;
+        }
 
-            // Проверяем, изменились ли данные
-            if (oldState.getData().equals(event.getPayload())) {
-                log.info("Event for sensor {} has same data as current state, ignoring. Old: {}, New: {}",
-                        event.getId(), oldState.getData(), event.getPayload());
-                return Optional.empty();
+        long idleSince = System.currentTimeMillis() - idleTimeout.toMillis();
+        int evicted = 0;
+        IOException spillFailure = null;
+        Iterator<HubState> iterator = hubs.values().iterator();
+        while (iterator.hasNext()) {
+            HubState hub = iterator.next();
+            boolean idle = hub.lastAccess < idleSince;
+            if (!idle && hubs.size() <= maxHubs) {
+                break;
             }
+            if (hub.hasChanges()) {
+                continue;
+            }
+            try {
+                spill.spill(hub);
+            } catch (IOException e) {
+                spillFailure = e;
+                continue;
+            }
+            iterator.remove();
+            evictedListener.accept(hub.getHubId());
+            metrics.evicted(idle);
+            evicted++;
+        }
+        if (spillFailure != null) {
+            log.warn("Failed to spill some hubs, keeping them in memory", spillFailure);
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} hubs, {} remain in memory", evicted, hubs.size());
         }
+        return evicted;
+    }
 
-        // Создаем новое состояние датчика
-        SensorStateAvro newState = SensorStateAvro.newBuilder()
-                .setTimestamp(event.getTimestamp())
-                .setData(event.getPayload())
-                .build();
+    private void reportUnenforcedLimit(int maxHubs) {
+        if (hubs.size() <= maxHubs) {
+            limitUnenforcedReported = false;
+            return;
+        }
+        metrics.limitUnenforced();
+        if (!limitUnenforcedReported) {
+            log.warn("{} hubs in memory exceed the limit of {}, but there is no state store to spill them to",
+                    hubs.size(), maxHubs);
+            limitUnenforcedReported = true;
+        }
+    }
+
+    /**
+     * Отключает хранилище вытесненных хабов, например после его ошибки.
+     */
+    public void detachSpill() {
+        spill = null;
+    }
 
-        // Обновляем состояние в map
-        sensorsState.put(event.getId(), newState);
+    /**
+     * Восстанавливает состояние хаба из снапшота локального хранилища.
+     */
+    public void restore(SensorsSnapshotAvro snapshot) {
+        HubState hub = new HubState(snapshot.getHubId());
+        hub.load(snapshot);
+        hub.lastAccess = System.currentTimeMillis();
+        hubs.put(snapshot.getHubId(), hub);
+    }
 
-        // Создаем НОВЫЙ снапшот с обновленным timestamp через builder
-        SensorsSnapshotAvro updatedSnapshot = SensorsSnapshotAvro.newBuilder()
-                .setHubId(event.getHubId())
-                .setTimestamp(event.getTimestamp())
-                .setSensorsState(sensorsState)
-                .build();
+    /**
+     * Отбрасывает состояние всех хабов в памяти, например после неудачного восстановления.
+     */
+    public void clear() {
+        hubs.clear();
+    }
 
-        // Сохраняем обновленный снапшот в map
-        snapshots.put(event.getHubId(), updatedSnapshot);
+    /**
+     * Состояние хаба, которого нет в памяти: вытесненное ранее или новое.
+     */
+    private HubState reload(String hubId) {
+        HubState hub = new HubState(hubId);
+        if (spill == null) {
+            return hub;
+        }
+        long started = System.nanoTime();
+        try {
+            SensorsSnapshotAvro snapshot = spill.reload(hubId);
+            if (snapshot != null) {
+                hub.load(snapshot);
+                hub.setSpilled(true);
+                metrics.reloaded(System.nanoTime() - started);
+            }
+        } catch (IOException e) {
+            log.error("Failed to reload state of hub {}, starting from empty state", hubId, e);
+        }
+        return hub;
+    }
 
-        log.info("Updated snapshot for hub {}, sensor {}", event.getHubId(), event.getId());
-        return Optional.of(updatedSnapshot);
+    /**
+     * Состояния всех хабов партиции в памяти.
+     */
+    public Collection<HubState> getHubs() {
+        return hubs.values();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Построение дельта-снапшотов хабов одной партиции.
+ * <p>
+ * При отправке строит {@link SensorsSnapshotDeltaAvro} только с датчиками, изменившимися
+ * с последней отправки хаба (их отмечает {@link HubState}). Версия хаба растет на 1 с каждой отправкой.
+ * Опорный кадр с полным состоянием отправляется первым для хаба после создания
+ * состояния партиции, каждые {@code keyframeInterval} версий и после неудачной отправки,
+ * чтобы потребитель не ждал потерянную версию.
+ * <p>
+ * Экземпляр не потокобезопасен: им владеет поток, которому назначена партиция.
+ */
+public class SnapshotDeltaTracker {
+
+    private final Map<String, HubVersion> versions = new HashMap<>();
+
+    /**
+     * Строит дельту для отправки текущего состояния хаба и сбрасывает отметки изменений.
+     *
+     * @param keyframeInterval количество версий между опорными кадрами
+     */
+    public SensorsSnapshotDeltaAvro next(HubState hub, int keyframeInterval) {
+        HubVersion version = versions.computeIfAbsent(hub.getHubId(), id -> new HubVersion());
+        version.version++;
+
+        boolean keyframe = version.keyframeRequired
+                || version.version - version.keyframeVersion >= keyframeInterval;
+        if (keyframe) {
+            version.keyframeRequired = false;
+            version.keyframeVersion = version.version;
+        }
+
+        SensorsSnapshotDeltaAvro delta = SensorsSnapshotDeltaAvro.newBuilder()
+                .setHubId(hub.getHubId())
+                .setTimestamp(hub.getTimestamp())
+                .setVersion(version.version)
+                .setKeyframe(keyframe)
+                .setSensorsState(keyframe ? hub.states() : hub.changedStates())
+                .build();
+        hub.clearChanges();
+        return delta;
+    }
+
+    /**
+     * Следующая отправка каждого хаба будет опорным кадром.
+     */
+    public void requireKeyframes() {
+        versions.values().forEach(version -> version.keyframeRequired = true);
+    }
+
+    /**
+     * Забывает версию хаба, вытесненного из памяти: следующая отправка начнет
+     * новую последовательность версий с опорного кадра.
+     */
+    public void forget(String hubId) {
+        versions.remove(hubId);
+    }
+
+    private static final class HubVersion {
+        private long version;
+        private long keyframeVersion;
+        private boolean keyframeRequired = true;
+    }
+}
@@ -0,0 +1,295 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
+import ru.yandex.practicum.telemetry.aggregator.storage.PartitionStateStore;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Состояние хабов одной партиции топика событий и позиция, до которой оно построено.
+ * <p>
+ * Если для партиции открыто локальное хранилище, события, изменившие состояние,
+ * записываются в его журнал, а в конце пакета журнал сбрасывается на диск
+ * и при необходимости создается контрольная точка. Ошибка хранилища не останавливает
+ * обработку: партиция продолжает работать только в памяти.
+ * <p>
+ * При объединении снапшотов измененные хабы копятся в {@link #defer(HubState)}
+ * до отправки; пока они не отправлены, журнал и офсеты партиции не фиксируются.
+ * <p>
+ * После фиксации журнала простаивающие хабы и хабы сверх лимита вытесняются из памяти
+ * в хранилище партиции ({@link AggregationProperties.HubCache}). Без хранилища хабы
+ * остаются в памяти.
+ * <p>
+ * С упорядочиванием по времени события ({@link EventReorderBuffer}) события сначала
+ * проходят через {@link #offer(long, SensorEventAvro, EventReorderBuffer.Sink)}, а применяются
+ * при выпуске из буфера.
+ * Журнал и офсеты партиции фиксируются только до первого события в буфере
+ * ({@link #getCommittableOffset()}), поэтому после сбоя события буфера читаются повторно.
+ */
+@Slf4j
+@Getter
+public class SnapshotShard {
+
+    private final TopicPartition partition;
+    private final SnapshotAggregator aggregator;
+    private final SnapshotDeltaTracker deltas = new SnapshotDeltaTracker();
+    private PartitionStateStore store;
+
+    @Getter(AccessLevel.NONE)
+    private final AggregationProperties.HubCache hubCache;
+
+    /**
+     * Буфер упорядочивания событий или null, если упорядочивание выключено.
+     */
+    @Getter(AccessLevel.NONE)
+    private final EventReorderBuffer reorder;
+
+    /**
+     * Офсет следующего необработанного события партиции, -1 - событий еще не было.
+     */
+    private long nextOffset = -1;
+
+    /**
+     * Измененные хабы, ожидающие отправки.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, HubState> pendingSnapshots = new LinkedHashMap<>();
+    private long pendingSince;
+
+    public SnapshotShard(TopicPartition partition, AggregationProperties properties,
+                         HubCacheMetrics hubCacheMetrics, EventTimeMetrics eventTimeMetrics) {
+        this(partition, null, properties, hubCacheMetrics, eventTimeMetrics);
+    }
+
+    public SnapshotShard(TopicPartition partition, PartitionStateStore store, AggregationProperties properties,
+                         HubCacheMetrics hubCacheMetrics, EventTimeMetrics eventTimeMetrics) {
+        this.partition = partition;
+        this.store = store;
+        this.hubCache = properties.getHubCache();
+        this.aggregator = new SnapshotAggregator(store, hubCacheMetrics);
+        this.reorder = properties.getReorder().isEnabled()
+                ? new EventReorderBuffer(properties.getReorder(), eventTimeMetrics)
+                : null;
+    }
+
+    /**
+     * Загружает сохраненное состояние партиции.
+     * <p>
+     * Если состояние не читается, частично загруженное состояние отбрасывается,
+     * хранилище начинается заново, а партиция читается с закоммиченного офсета.
+     *
+     * @param limit офсет, дальше которого состояние не восстанавливается
+     * @return офсет, с которого нужно продолжить чтение, или -1, если состояния нет
+     */
+    public long restore(long limit) {
+        if (store != null) {
+            try {
+                nextOffset = store.restore(aggregator, limit);
+            } catch (IOException | RuntimeException e) {
+                restoreFailed(e);
+            }
+        }
+        return nextOffset;
+    }
+
+    /**
+     * Записывает в журнал событие, изменившее состояние.
+     */
+    public void record(long offset, SensorEventAvro event) {
+        if (store != null) {
+            try {
+                store.append(offset, event);
+            } catch (IOException e) {
+                storeFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Отмечает событие с указанным офсетом как прочитанное: учтенное в состоянии или в буфере.
+     */
+    public void advance(long offset) {
+        nextOffset = offset + 1;
+    }
+
+    /**
+     * Передает событие в буфер упорядочивания. Без упорядочивания, а также опоздавшее
+     * в пределах допустимого событие сразу передается в {@code sink}.
+     */
+    public void offer(long offset, SensorEventAvro event, EventReorderBuffer.Sink sink) {
+        if (reorder == null) {
+            sink.accept(offset, event);
+        } else {
+            reorder.offer(offset, event, sink);
+        }
+    }
+
+    /**
+     * Выпускает из буфера события, дождавшиеся своей очереди по времени события.
+     */
+    public void releaseBuffered(EventReorderBuffer.Sink sink) {
+        if (reorder != null) {
+            reorder.release(sink);
+        }
+    }
+
+    public boolean hasBufferedEvents() {
+        return reorder != null && reorder.hasBufferedEvents();
+    }
+
+    /**
+     * Количество событий партиции в буфере упорядочивания.
+     */
+    public int bufferedEvents() {
+        return reorder == null ? 0 : reorder.size();
+    }
+
+    /**
+     * Офсет, до которого события учтены в состоянии: первое событие в буфере
+     * или следующее непрочитанное, -1 - событий еще не было.
+     */
+    public long getCommittableOffset() {
+        long firstBuffered = reorder == null ? -1 : reorder.firstBufferedOffset();
+        return firstBuffered >= 0 ? firstBuffered : nextOffset;
+    }
+
+    /**
+     * Откладывает отправку снапшота хаба. Снапшот соберется из состояния хаба на момент отправки.
+     */
+    public void defer(HubState hub) {
+        if (pendingSnapshots.isEmpty()) {
+            pendingSince = System.currentTimeMillis();
+        }
+        pendingSnapshots.putIfAbsent(hub.getHubId(), hub);
+    }
+
+    public boolean hasPendingSnapshots() {
+        return !pendingSnapshots.isEmpty();
+    }
+
+    /**
+     * Истекло ли окно объединения для отложенных снапшотов.
+     */
+    public boolean isPublishDue(Duration window) {
+        return !pendingSnapshots.isEmpty()
+                && System.currentTimeMillis() - pendingSince >= window.toMillis();
+    }
+
+    /**
+     * Забирает хабы, ожидающие отправки.
+     */
+    public List<HubState> drainPendingSnapshots() {
+        List<HubState> drained = new ArrayList<>(pendingSnapshots.values());
+        pendingSnapshots.clear();
+        return drained;
+    }
+
+    /**
+     * Возвращает в очередь хабы, отправка которых не удалась.
+     */
+    public void requeue(Collection<HubState> hubs) {
+        hubs.forEach(this::defer);
+    }
+
+    /**
+     * Сбрасывает журнал на диск, создает контрольную точку, если пора, и вытесняет
+     * простаивающие хабы. Вызывается после подтверждения отправки всех снапшотов,
+     * построенных до {@link #getCommittableOffset()}.
+     */
+    public void flush() {
+        flushJournal();
+        compact();
+    }
+
+    /**
+     * Фиксирует позицию партиции в журнале и сбрасывает его на диск.
+     */
+    public void flushJournal() {
+        long committableOffset = getCommittableOffset();
+        if (store == null || committableOffset < 0) {
+            return;
+        }
+        try {
+            store.flush(committableOffset);
+        } catch (IOException e) {
+            storeFailed(e);
+        }
+    }
+
+    /**
+     * Создает контрольную точку, если пора, и вытесняет простаивающие хабы.
+     * В транзакционном режиме вызывается только после фиксации транзакции, чтобы
+     * контрольная точка и вытесненные хабы не опережали закоммиченный офсет.
+     */
+    public void compact() {
+        long committableOffset = getCommittableOffset();
+        // Отложенные хабы ссылаются на состояние в памяти, которое опережает журнал
+        if (committableOffset < 0 || !pendingSnapshots.isEmpty()) {
+            return;
+        }
+        if (store != null && store.isCheckpointDue()) {
+            try {
+                store.checkpoint(committableOffset, aggregator);
+            } catch (IOException e) {
+                storeFailed(e);
+            }
+        }
+        aggregator.evict(hubCache.getMaxHubsPerPartition(), hubCache.getIdleTimeout(), this::forget);
+    }
+
+    /**
+     * Количество хабов партиции в памяти.
+     */
+    public int residentHubs() {
+        return aggregator.getHubs().size();
+    }
+
+    /**
+     * Закрывает хранилище партиции.
+     */
+    public void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.warn("Failed to close state store of partition {}", partition, e);
+            }
+            store = null;
+        }
+    }
+
+    private void forget(String hubId) {
+        deltas.forget(hubId);
+        if (reorder != null) {
+            reorder.forget(hubId);
+        }
+    }
+
+    private void restoreFailed(Exception e) {
+        log.error("Failed to restore state of partition {}, reading it from the committed offset", partition, e);
+        aggregator.clear();
+        nextOffset = -1;
+        try {
+            store.quarantine();
+        } catch (IOException quarantineError) {
+            storeFailed(quarantineError);
+        }
+    }
+
+    private void storeFailed(IOException e) {
+        log.error("State store of partition {} failed, continuing in memory only", partition, e);
+        aggregator.detachSpill();
+        close();
+    }
+}
@@ -0,0 +1,241 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
+import ru.yandex.practicum.telemetry.aggregator.storage.SnapshotStateStore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Реестр состояний хабов, разбитых по партициям топика событий.
+ * <p>
+ * События хаба всегда попадают в одну партицию (ключ записи - идентификатор хаба),
+ * поэтому состояние партиции изменяет только поток слушателя, которому она назначена,
+ * и блокировки на обработке событий не нужны. Реестр только передает состояния
+ * между потоками при перебалансировке:
+ * <ul>
+ *     <li>при отзыве партиции ее состояние откладывается вместе с позицией, до которой оно построено;</li>
+ *     <li>при назначении отложенное состояние забирает новый владелец, если чтение продолжается
+ *     ровно с этой позиции, иначе состояние загружается из локального хранилища
+ *     {@link SnapshotStateStore} и чтение продолжается с сохраненного в нем офсета;</li>
+ *     <li>при потере партиции состояние отбрасывается - им уже может владеть другой экземпляр.</li>
+ * </ul>
+ * В транзакционном режиме состояние не восстанавливается дальше закоммиченного офсета,
+ * а после прерванной транзакции откатывается к нему ({@link #rollback(Consumer, Collection)}).
+ * Отложенное состояние, которое за {@link #PARKED_STATE_TTL} никто не забрал (партиция ушла
+ * другому экземпляру), удаляется при следующем назначении.
+ * <p>
+ * Количество хабов в памяти всех партиций публикуется метрикой {@code aggregator.hubs.resident},
+ * количество событий в буферах упорядочивания - метрикой {@code aggregator.events.buffered}.
+ */
+@Slf4j
+@Component
+public class SnapshotShardRegistry implements ConsumerAwareRebalanceListener {
+
+    private static final Duration PARKED_STATE_TTL = Duration.ofMinutes(5);
+
+    private final SnapshotStateStore snapshotStateStore;
+    private final AggregationProperties aggregationProperties;
+    private final HubCacheMetrics hubCacheMetrics;
+    private final EventTimeMetrics eventTimeMetrics;
+
+    /**
+     * Состояния партиций, назначенных потокам этого экземпляра.
+     */
+    private final ConcurrentMap<TopicPartition, SnapshotShard> active = new ConcurrentHashMap<>();
+
+    /**
+     * Состояния отозванных партиций, ожидающие нового владельца.
+     */
+    private final ConcurrentMap<TopicPartition, ParkedShard> parked = new ConcurrentHashMap<>();
+
+    public SnapshotShardRegistry(SnapshotStateStore snapshotStateStore, AggregationProperties aggregationProperties,
+                                 HubCacheMetrics hubCacheMetrics, EventTimeMetrics eventTimeMetrics,
+                                 MeterRegistry meterRegistry) {
+        this.snapshotStateStore = snapshotStateStore;
+        this.aggregationProperties = aggregationProperties;
+        this.hubCacheMetrics = hubCacheMetrics;
+        this.eventTimeMetrics = eventTimeMetrics;
+        Gauge.builder("aggregator.hubs.resident", this, SnapshotShardRegistry::residentHubs)
+                .description("Hubs held in memory across all partitions")
+                .register(meterRegistry);
+        Gauge.builder("aggregator.events.buffered", this, SnapshotShardRegistry::bufferedEvents)
+                .description("Events waiting in event-time reorder buffers")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Состояние партиции для потока, которому она назначена.
+     */
+    public SnapshotShard shard(String topic, int partition) {
+        return active.computeIfAbsent(new TopicPartition(topic, partition),
+                key -> new SnapshotShard(key, aggregationProperties, hubCacheMetrics, eventTimeMetrics));
+    }
+
+    /**
+     * Состояния указанных партиций, назначенных этому экземпляру.
+     */
+    public List<SnapshotShard> shards(Collection<TopicPartition> partitions) {
+        List<SnapshotShard> shards = new ArrayList<>(partitions.size());
+        for (TopicPartition partition : partitions) {
+            SnapshotShard shard = active.get(partition);
+            if (shard != null) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Состояние с неотправленными объединенными снапшотами или с событиями в буфере
+     * упорядочивания не совпадает с закоммиченным офсетом, поэтому не откладывается:
+     * новый владелец восстановит его из хранилища и прочитает события окна и буфера повторно.
+     */
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            SnapshotShard shard = active.remove(partition);
+            if (shard == null) {
+                continue;
+            }
+            if (shard.hasPendingSnapshots() || shard.hasBufferedEvents()) {
+                log.info("Partition {} revoked with unpublished snapshots, state will be restored", partition);
+                shard.close();
+            } else {
+                shard.flush();
+                parked.put(partition, new ParkedShard(shard, Instant.now()));
+            }
+        }
+        log.info("Partitions revoked: {}", partitions);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            ParkedShard parkedShard = parked.remove(partition);
+            long position = consumer.position(partition);
+            if (parkedShard != null && parkedShard.shard().getNextOffset() == position) {
+                active.put(partition, parkedShard.shard());
+                log.info("Partition {} resumed with existing state at offset {}", partition, position);
+            } else {
+                if (parkedShard != null) {
+                    parkedShard.shard().close();
+                }
+                active.put(partition, restore(consumer, partition, position));
+            }
+        }
+
+        Instant expiration = Instant.now().minus(PARKED_STATE_TTL);
+        parked.values().removeIf(parkedShard -> {
+            boolean expired = parkedShard.parkedAt().isBefore(expiration);
+            if (expired) {
+                parkedShard.shard().close();
+            }
+            return expired;
+        });
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            SnapshotShard shard = active.remove(partition);
+            if (shard != null) {
+                shard.close();
+            }
+            ParkedShard parkedShard = parked.remove(partition);
+            if (parkedShard != null) {
+                parkedShard.shard().close();
+            }
+        }
+        log.warn("Partitions lost: {}", partitions);
+    }
+
+    /**
+     * Откатывает состояние партиций к закоммиченным офсетам после прерванной транзакции:
+     * состояние заново загружается из локального хранилища, и чтение продолжается с офсета,
+     * до которого оно построено. Без хранилища состояние партиции начинается заново.
+     */
+    public void rollback(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+        for (TopicPartition partition : partitions) {
+            SnapshotShard shard = active.remove(partition);
+            if (shard != null) {
+                shard.close();
+            }
+            OffsetAndMetadata offset = committed.get(partition);
+            if (offset != null) {
+                consumer.seek(partition, offset.offset());
+            } else {
+                consumer.seekToBeginning(List.of(partition));
+            }
+            active.put(partition, restore(consumer, partition, consumer.position(partition)));
+        }
+        log.warn("Partitions rolled back to committed offsets: {}", partitions);
+    }
+
+    /**
+     * Загружает состояние партиции из локального хранилища. Офсет хранилища считается
+     * главным: если он отличается от закоммиченного, чтение переносится на него,
+     * чтобы состояние и позиция чтения совпадали. В транзакционном режиме хранилище
+     * может опережать Kafka только на прерванную транзакцию, поэтому состояние
+     * восстанавливается не дальше закоммиченного офсета.
+     */
+    private SnapshotShard restore(Consumer<?, ?> consumer, TopicPartition partition, long position) {
+        SnapshotShard shard = new SnapshotShard(partition, snapshotStateStore.open(partition),
+                aggregationProperties, hubCacheMetrics, eventTimeMetrics);
+        boolean transactional = aggregationProperties.getPublishing().isTransactional();
+        long restoredOffset = shard.restore(transactional ? position : Long.MAX_VALUE);
+        if (restoredOffset >= 0 && restoredOffset != position) {
+            consumer.seek(partition, restoredOffset);
+            log.info("Partition {} restored from local state, seeking from {} to {}",
+                    partition, position, restoredOffset);
+        } else {
+            log.info("Partition {} assigned at offset {}", partition, position);
+        }
+        return shard;
+    }
+
+    /**
+     * Количество хабов в памяти. Читается из потока сбора метрик без синхронизации,
+     * поэтому значение приблизительное.
+     */
+    private double residentHubs() {
+        int hubs = 0;
+        for (SnapshotShard shard : active.values()) {
+            hubs += shard.residentHubs();
+        }
+        for (ParkedShard parkedShard : parked.values()) {
+            hubs += parkedShard.shard().residentHubs();
+        }
+        return hubs;
+    }
+
+    /**
+     * Количество событий в буферах упорядочивания, приблизительное по той же причине.
+     */
+    private double bufferedEvents() {
+        int events = 0;
+        for (SnapshotShard shard : active.values()) {
+            events += shard.bufferedEvents();
+        }
+        return events;
+    }
+
+    private record ParkedShard(SnapshotShard shard, Instant parkedAt) {
+    }
+}
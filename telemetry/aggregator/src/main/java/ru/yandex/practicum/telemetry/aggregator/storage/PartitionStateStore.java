@@ -0,0 +1,397 @@
+package ru.yandex.practicum.telemetry.aggregator.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import ru.yandex.practicum.kafka.telemetry.deserializer.SensorEventDeserializer;
+import ru.yandex.practicum.kafka.telemetry.deserializer.SnapshotDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.telemetry.aggregator.service.HubSpill;
+import ru.yandex.practicum.telemetry.aggregator.service.HubState;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotAggregator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Локальное хранилище состояния хабов одной партиции.
+ * <p>
+ * Состоит из двух файлов:
+ * <ul>
+ *     <li>checkpoint - все снапшоты партиции и офсет, до которого они построены;
+ *     перезаписывается атомарно через временный файл;</li>
+ *     <li>log - журнал после контрольной точки: события, изменившие состояние,
+ *     и отметки позиции в конце каждого пакета.</li>
+ * </ul>
+ * При восстановлении загружается контрольная точка и повторяются события журнала,
+ * поэтому время запуска зависит от размера состояния, а не от длины истории топика.
+ * События журнала применяются только вместе с последующей отметкой позиции: отметка
+ * пишется после подтверждения отправки снапшотов пакета, поэтому события пакета без
+ * отметки отбрасываются и читаются из Kafka повторно.
+ * <p>
+ * Каждая запись журнала хранит свою длину и CRC32. Повтор останавливается на первой
+ * недописанной (падение во время записи) или поврежденной записи: состояние восстанавливается
+ * до последней целой отметки позиции, остальное читается из Kafka. Если восстановить
+ * состояние нельзя вовсе, каталог партиции убирается в сторону ({@link #quarantine()}).
+ * <p>
+ * Хабы, вытесненные из памяти, хранятся по одному в каталоге spill и не входят в контрольную
+ * точку. Файл вытесненного хаба удаляется контрольной точкой, сохранившей хаб после его
+ * загрузки обратно, поэтому при восстановлении журнал всегда применяется к актуальному
+ * состоянию хаба: из контрольной точки или из файла вытеснения.
+ * <p>
+ * Экземпляр не потокобезопасен: им пользуется поток, владеющий партицией.
+ */
+@Slf4j
+public class PartitionStateStore implements HubSpill, Closeable {
+
+    private static final int CHECKPOINT_MAGIC = 0x534E4150;
+    private static final int CHECKPOINT_VERSION = 1;
+
+    private static final int LOG_MAGIC = 0x4A524E4C;
+    private static final int LOG_VERSION = 2;
+
+    private static final byte ENTRY_EVENT = 1;
+    private static final byte ENTRY_POSITION = 2;
+
+    /**
+     * Тип и офсет записи журнала; за ними в записи события следуют байты события.
+     */
+    private static final int ENTRY_HEADER_SIZE = Byte.BYTES + Long.BYTES;
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOG_FILE = "log";
+    private static final String SPILL_DIRECTORY = "spill";
+
+    private final TopicPartition partition;
+    private final Path directory;
+    private final Path checkpointFile;
+    private final Path logFile;
+    private final Path spillDirectory;
+    private final Duration checkpointInterval;
+    private final int checkpointLogEntries;
+    private final boolean fsync;
+
+    private final AvroSerializer<SensorEventAvro> eventSerializer = new AvroSerializer<>();
+    private final AvroSerializer<SensorsSnapshotAvro> snapshotSerializer = new AvroSerializer<>();
+    private final SensorEventDeserializer eventDeserializer = new SensorEventDeserializer();
+    private final SnapshotDeserializer snapshotDeserializer = new SnapshotDeserializer();
+
+    private final CRC32 checksum = new CRC32();
+    private final ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+
+    private FileOutputStream journalStream;
+    private DataOutputStream journal;
+    private int journalEntries;
+    private long lastCheckpointAt;
+
+    PartitionStateStore(TopicPartition partition, Path directory, Duration checkpointInterval,
+                        int checkpointLogEntries, boolean fsync) {
+        this.partition = partition;
+        this.directory = directory;
+        this.checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        this.logFile = directory.resolve(LOG_FILE);
+        this.spillDirectory = directory.resolve(SPILL_DIRECTORY);
+        this.checkpointInterval = checkpointInterval;
+        this.checkpointLogEntries = checkpointLogEntries;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Восстанавливает состояние партиции в агрегатор и открывает журнал для записи.
+     * <p>
+     * Пакеты журнала с отметкой позиции дальше {@code limit} не применяются: в транзакционном
+     * режиме отметка пишется до фиксации транзакции, и состояние не должно опережать
+     * закоммиченный в Kafka офсет.
+     *
+     * @param limit офсет, дальше которого состояние не восстанавливается
+     * @return офсет следующего необработанного события или -1, если сохраненного состояния нет
+     * @throws IOException      если контрольная точка не читается
+     * @throws RuntimeException если снапшот или событие не десериализуется
+     */
+    public long restore(SnapshotAggregator aggregator, long limit) throws IOException {
+        long nextOffset = -1;
+
+        if (Files.exists(checkpointFile)) {
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+                if (input.readInt() != CHECKPOINT_MAGIC || input.readInt() != CHECKPOINT_VERSION) {
+                    throw new IOException("Unsupported checkpoint format: " + checkpointFile);
+                }
+                nextOffset = input.readLong();
+                if (nextOffset > limit) {
+                    log.warn("Checkpoint of partition {} at offset {} is ahead of committed offset {}, "
+                            + "snapshots in between may be published again", partition, nextOffset, limit);
+                }
+                int hubs = input.readInt();
+                for (int i = 0; i < hubs; i++) {
+                    aggregator.restore(snapshotDeserializer.deserialize(partition.topic(), readBytes(input)));
+                }
+            }
+        }
+
+        int replayed = 0;
+        if (Files.exists(logFile)) {
+            // События применяются только после отметки позиции: события без отметки
+            // относятся к пакету, снапшоты которого могли не дойти до Kafka
+            List<SensorEventAvro> batch = new ArrayList<>();
+            long remaining = Files.size(logFile);
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(logFile)))) {
+                if (remaining < 2L * Integer.BYTES
+                        || input.readInt() != LOG_MAGIC || input.readInt() != LOG_VERSION) {
+                    log.warn("Unsupported state log format of partition {}, replaying from checkpoint", partition);
+                    remaining = 0;
+                } else {
+                    remaining -= 2L * Integer.BYTES;
+                }
+
+                while (remaining > 0) {
+                    byte[] entry = readEntry(input, remaining);
+                    if (entry == null) {
+                        break;
+                    }
+                    remaining -= 2L * Integer.BYTES + entry.length;
+
+                    ByteBuffer buffer = ByteBuffer.wrap(entry);
+                    byte type = buffer.get();
+                    long offset = buffer.getLong();
+                    if (type == ENTRY_EVENT) {
+                        // Записи до контрольной точки остаются, если процесс упал до очистки журнала
+                        if (offset >= nextOffset) {
+                            byte[] payload = Arrays.copyOfRange(entry, ENTRY_HEADER_SIZE, entry.length);
+                            batch.add(eventDeserializer.deserialize(partition.topic(), payload));
+                        }
+                    } else if (type == ENTRY_POSITION) {
+                        if (offset > limit) {
+                            break;
+                        }
+                        if (offset > nextOffset) {
+                            batch.forEach(aggregator::update);
+                            replayed += batch.size();
+                            nextOffset = offset;
+                        }
+                        batch.clear();
+                    } else {
+                        log.warn("Unknown state log entry of partition {}, ignoring the rest", partition);
+                        break;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                log.info("Discarded {} unconfirmed events of partition {}", batch.size(), partition);
+            }
+        }
+
+        log.info("Restored state of partition {}: hubs={}, replayed={}, nextOffset={}",
+                partition, aggregator.getHubs().size(), replayed, nextOffset);
+
+        // Журнал переписывается с контрольной точки, чтобы отбросить возможный поврежденный хвост
+        checkpoint(nextOffset, aggregator);
+        return nextOffset;
+    }
+
+    /**
+     * Записывает в журнал событие, изменившее состояние.
+     */
+    public void append(long offset, SensorEventAvro event) throws IOException {
+        writeEntry(ENTRY_EVENT, offset, eventSerializer.serialize(null, event));
+        journalEntries++;
+    }
+
+    /**
+     * Фиксирует позицию партиции в журнале и сбрасывает его на диск.
+     * Вызывается только после того, как снапшоты пакета подтверждены Kafka.
+     *
+     * @param nextOffset офсет следующего необработанного события
+     */
+    public void flush(long nextOffset) throws IOException {
+        writeEntry(ENTRY_POSITION, nextOffset, NO_PAYLOAD);
+        journal.flush();
+        if (fsync) {
+            journalStream.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Пора ли создать контрольную точку.
+     */
+    public boolean isCheckpointDue() {
+        return journalEntries >= checkpointLogEntries
+                || System.currentTimeMillis() - lastCheckpointAt >= checkpointInterval.toMillis();
+    }
+
+    /**
+     * Сохраняет снапшоты всех хабов партиции и начинает журнал заново.
+     * Снапшоты собираются из состояния по одному, чтобы не держать в памяти все сразу.
+     *
+     * @param nextOffset офсет следующего необработанного события
+     */
+    public void checkpoint(long nextOffset, SnapshotAggregator aggregator) throws IOException {
+        Collection<HubState> hubs = aggregator.getHubs();
+        Path temporary = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream))) {
+            output.writeInt(CHECKPOINT_MAGIC);
+            output.writeInt(CHECKPOINT_VERSION);
+            output.writeLong(nextOffset);
+            output.writeInt(hubs.size());
+            for (HubState hub : hubs) {
+                byte[] payload = snapshotSerializer.serialize(null, hub.toSnapshot());
+                output.writeInt(payload.length);
+                output.write(payload);
+            }
+            output.flush();
+            stream.getChannel().force(true);
+        }
+        Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Загруженные обратно хабы теперь в контрольной точке, их файлы вытеснения больше не нужны
+        for (HubState hub : hubs) {
+            if (hub.isSpilled()) {
+                Files.deleteIfExists(spillFile(hub.getHubId()));
+                hub.setSpilled(false);
+            }
+        }
+
+        closeJournal();
+        journalStream = new FileOutputStream(logFile.toFile(), false);
+        journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+        journal.writeInt(LOG_MAGIC);
+        journal.writeInt(LOG_VERSION);
+        journalEntries = 0;
+        lastCheckpointAt = System.currentTimeMillis();
+        log.debug("Checkpoint of partition {} saved at offset {}", partition, nextOffset);
+    }
+
+    /**
+     * Сохраняет снапшот вытесняемого хаба. Файл перезаписывается атомарно через временный файл.
+     */
+    @Override
+    public void spill(HubState hub) throws IOException {
+        Files.createDirectories(spillDirectory);
+        Path file = spillFile(hub.getHubId());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            stream.write(snapshotSerializer.serialize(null, hub.toSnapshot()));
+            if (fsync) {
+                stream.getChannel().force(true);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Загружает снапшот вытесненного хаба. Файл остается до следующей контрольной точки.
+     *
+     * @return снапшот хаба или null, если хаб не вытеснялся
+     */
+    @Override
+    public SensorsSnapshotAvro reload(String hubId) throws IOException {
+        Path file = spillFile(hubId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return snapshotDeserializer.deserialize(partition.topic(), Files.readAllBytes(file));
+    }
+
+    /**
+     * Убирает каталог партиции, состояние которой не удалось восстановить, и начинает
+     * хранилище с пустого состояния. Каталог переименовывается, а не удаляется,
+     * чтобы причину можно было разобрать.
+     */
+    public void quarantine() throws IOException {
+        closeJournal();
+        Path quarantined = directory.resolveSibling(
+                directory.getFileName() + ".corrupted-" + System.currentTimeMillis());
+        Files.move(directory, quarantined, StandardCopyOption.ATOMIC_MOVE);
+        log.warn("State of partition {} moved to {}", partition, quarantined);
+
+        Files.createDirectories(directory);
+        checkpoint(-1, new SnapshotAggregator());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeJournal();
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            journalStream = null;
+        }
+    }
+
+    /**
+     * Имя файла - идентификатор хаба в hex, чтобы любые символы идентификатора были допустимы.
+     */
+    private Path spillFile(String hubId) {
+        return spillDirectory.resolve(HexFormat.of().formatHex(hubId.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Записывает запись журнала: длину, CRC32, тип, офсет и байты события.
+     */
+    private void writeEntry(byte type, long offset, byte[] payload) throws IOException {
+        entryHeader.clear();
+        entryHeader.put(type).putLong(offset);
+        checksum.reset();
+        checksum.update(entryHeader.array(), 0, ENTRY_HEADER_SIZE);
+        checksum.update(payload, 0, payload.length);
+
+        journal.writeInt(ENTRY_HEADER_SIZE + payload.length);
+        journal.writeInt((int) checksum.getValue());
+        journal.write(entryHeader.array(), 0, ENTRY_HEADER_SIZE);
+        journal.write(payload);
+    }
+
+    /**
+     * Читает запись журнала и проверяет ее длину и контрольную сумму.
+     *
+     * @param remaining сколько байт журнала осталось прочитать
+     * @return тип, офсет и байты события или null, если запись недописана или повреждена
+     */
+    private byte[] readEntry(DataInputStream input, long remaining) throws IOException {
+        if (remaining < 2L * Integer.BYTES) {
+            log.info("Discarded incomplete last entry of state log of partition {}", partition);
+            return null;
+        }
+        int length = input.readInt();
+        int expectedChecksum = input.readInt();
+        if (length < ENTRY_HEADER_SIZE || length > remaining - 2L * Integer.BYTES) {
+            log.warn("Incomplete or corrupted state log entry of partition {}, ignoring the rest", partition);
+            return null;
+        }
+
+        byte[] entry = new byte[length];
+        input.readFully(entry);
+        checksum.reset();
+        checksum.update(entry, 0, length);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            log.warn("Checksum mismatch in state log of partition {}, ignoring the rest", partition);
+            return null;
+        }
+        return entry;
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
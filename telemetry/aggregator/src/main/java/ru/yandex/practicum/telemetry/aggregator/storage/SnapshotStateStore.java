@@ -0,0 +1,46 @@
+package ru.yandex.practicum.telemetry.aggregator.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Фабрика локальных хранилищ состояния партиций.
+ * Каждая партиция хранится в отдельном подкаталоге {@code <directory>/<topic>-<partition>}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SnapshotStateStore {
+
+    private final AggregationProperties aggregationProperties;
+
+    /**
+     * Открывает хранилище партиции.
+     *
+     * @return хранилище или null, если сохранение состояния выключено или каталог недоступен
+     */
+    public PartitionStateStore open(TopicPartition partition) {
+        AggregationProperties.State state = aggregationProperties.getState();
+        if (!state.isEnabled()) {
+            return null;
+        }
+
+        Path directory = Path.of(state.getDirectory(), partition.topic() + "-" + partition.partition());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            log.error("Failed to create state directory {}, partition {} will be kept in memory only",
+                    directory, partition, e);
+            return null;
+        }
+        return new PartitionStateStore(partition, directory, state.getCheckpointInterval(),
+                state.getCheckpointLogEntries(), state.isFsync());
+    }
+}
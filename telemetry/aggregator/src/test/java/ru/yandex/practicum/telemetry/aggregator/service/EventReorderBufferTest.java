@@ -0,0 +1,80 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class EventReorderBufferTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final EventReorderBuffer buffer = new EventReorderBuffer(reorder(), new EventTimeMetrics(registry));
+    private final List<Long> applied = new ArrayList<>();
+
+    @Test
+    void releasesEventsInEventTimeOrderOnceWatermarkPasses() {
+        buffer.offer(0, event(15_000), this::apply);
+        buffer.offer(1, event(13_000), this::apply);
+        buffer.offer(2, event(14_000), this::apply);
+        buffer.release(this::apply);
+        assertEquals(List.of(), applied);
+        assertEquals(0, buffer.firstBufferedOffset());
+
+        buffer.offer(3, event(24_000), this::apply);
+        buffer.release(this::apply);
+        assertEquals(List.of(1L, 2L), applied);
+        assertEquals(0, buffer.firstBufferedOffset());
+
+        buffer.offer(4, event(30_000), this::apply);
+        buffer.release(this::apply);
+        assertEquals(List.of(1L, 2L, 0L), applied);
+        assertEquals(3, buffer.firstBufferedOffset());
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    void countsLateEventsByResultOfApplying() {
+        buffer.offer(0, event(30_000), this::apply);
+
+        buffer.offer(1, event(17_000), this::apply);
+        buffer.offer(2, event(16_000), (offset, event) -> false);
+        buffer.offer(3, event(10_000), (offset, event) -> fail("Event behind allowed lateness was applied"));
+
+        assertEquals(List.of(1L), applied);
+        assertEquals(1, buffer.size());
+        assertEquals(1.0, registry.get("aggregator.events.late").counter().count());
+        assertEquals(1.0, registry.get("aggregator.events.dropped").tag("reason", "superseded").counter().count());
+        assertEquals(1.0, registry.get("aggregator.events.dropped").tag("reason", "lateness").counter().count());
+    }
+
+    private boolean apply(long offset, SensorEventAvro event) {
+        applied.add(offset);
+        return true;
+    }
+
+    private static AggregationProperties.Reorder reorder() {
+        AggregationProperties.Reorder reorder = new AggregationProperties.Reorder();
+        reorder.setEnabled(true);
+        reorder.setMaxOutOfOrderness(Duration.ofSeconds(10));
+        reorder.setAllowedLateness(Duration.ofSeconds(5));
+        return reorder;
+    }
+
+    private static SensorEventAvro event(long timestamp) {
+        return SensorEventAvro.newBuilder()
+                .setId("switch-1")
+                .setHubId("hub-1")
+                .setTimestamp(Instant.ofEpochMilli(timestamp))
+                .setPayload(new SwitchSensorAvro(true))
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HubStateTest {
+
+    private static final String HUB_ID = "hub-1";
+
+    @Test
+    void snapshotRestoresEveryPayloadType() {
+        HubState hub = new HubState(HUB_ID);
+        hub.update(event("climate-1", 1, new ClimateSensorAvro(21, 40, 600)));
+        hub.update(event("light-1", 2, new LightSensorAvro(90, 300)));
+        hub.update(event("motion-1", 3, new MotionSensorAvro(80, true, 220)));
+        hub.update(event("switch-1", 4, new SwitchSensorAvro(true)));
+        hub.update(event("temperature-1", 5,
+                new TemperatureSensorAvro("temperature-1", HUB_ID, Instant.ofEpochMilli(5), 20, 68)));
+
+        SensorsSnapshotAvro snapshot = hub.toSnapshot();
+        assertEquals(Instant.ofEpochMilli(5), snapshot.getTimestamp());
+        assertEquals(5, snapshot.getSensorsState().size());
+
+        HubState restored = new HubState(HUB_ID);
+        restored.load(snapshot);
+        assertEquals(snapshot, restored.toSnapshot());
+        assertFalse(restored.hasChanges());
+    }
+
+    @Test
+    void ignoresStaleAndUnchangedEvents() {
+        HubState hub = new HubState(HUB_ID);
+        assertTrue(hub.update(event("switch-1", 10, new SwitchSensorAvro(true))));
+
+        assertFalse(hub.update(event("switch-1", 5, new SwitchSensorAvro(false))));
+        assertFalse(hub.update(event("switch-1", 20, new SwitchSensorAvro(true))));
+        assertTrue(hub.update(event("switch-1", 30, new SwitchSensorAvro(false))));
+
+        assertEquals(Instant.ofEpochMilli(30), hub.getTimestamp());
+        assertFalse(((SwitchSensorAvro) hub.states().get("switch-1").getData()).getState());
+    }
+
+    @Test
+    void tracksChangedSensorsAcrossGrowth() {
+        HubState hub = new HubState(HUB_ID);
+        for (int i = 0; i < 100; i++) {
+            hub.update(event("switch-" + i, 1, new SwitchSensorAvro(true)));
+        }
+        assertEquals(100, hub.size());
+        assertEquals(100, hub.changedStates().size());
+
+        hub.clearChanges();
+        assertFalse(hub.hasChanges());
+
+        hub.update(event("switch-3", 2, new SwitchSensorAvro(false)));
+        hub.update(event("switch-70", 2, new SwitchSensorAvro(false)));
+        hub.update(event("switch-100", 2, new SwitchSensorAvro(false)));
+        assertEquals(Set.of("switch-3", "switch-70", "switch-100"), new HashSet<>(hub.changedStates().keySet()));
+        assertEquals(101, hub.states().size());
+    }
+
+    private static SensorEventAvro event(String sensorId, long timestamp, Object payload) {
+        return SensorEventAvro.newBuilder()
+                .setId(sensorId)
+                .setHubId(HUB_ID)
+                .setTimestamp(Instant.ofEpochMilli(timestamp))
+                .setPayload(payload)
+                .build();
+    }
+}
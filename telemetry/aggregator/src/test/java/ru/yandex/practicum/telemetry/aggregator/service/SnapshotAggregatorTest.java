@@ -0,0 +1,78 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnapshotAggregatorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void doesNotEvictWithoutSpill() {
+        SnapshotAggregator aggregator = new SnapshotAggregator(null, new HubCacheMetrics(registry));
+        fill(aggregator, 3);
+
+        List<String> evicted = new ArrayList<>();
+        assertEquals(0, aggregator.evict(1, Duration.ZERO, evicted::add));
+
+        assertEquals(List.of(), evicted);
+        assertEquals(3, aggregator.getHubs().size());
+        assertEquals(1.0, registry.get("aggregator.hubs.limit.unenforced").counter().count());
+    }
+
+    @Test
+    void spillsHubsOverLimitAndReloadsThem() {
+        InMemorySpill spill = new InMemorySpill();
+        SnapshotAggregator aggregator = new SnapshotAggregator(spill, new HubCacheMetrics(registry));
+        fill(aggregator, 3);
+
+        List<String> evicted = new ArrayList<>();
+        assertEquals(2, aggregator.evict(1, Duration.ofHours(1), evicted::add));
+        assertEquals(List.of("hub-0", "hub-1"), evicted);
+
+        HubState reloaded = aggregator.update(event("hub-0", "switch-2"));
+        assertEquals(2, reloaded.size());
+    }
+
+    private static void fill(SnapshotAggregator aggregator, int hubs) {
+        for (int i = 0; i < hubs; i++) {
+            aggregator.update(event("hub-" + i, "switch-1"));
+        }
+        aggregator.getHubs().forEach(HubState::clearChanges);
+    }
+
+    private static SensorEventAvro event(String hubId, String sensorId) {
+        return SensorEventAvro.newBuilder()
+                .setId(sensorId)
+                .setHubId(hubId)
+                .setTimestamp(Instant.ofEpochMilli(1_700_000_000_000L))
+                .setPayload(new SwitchSensorAvro(true))
+                .build();
+    }
+
+    private static final class InMemorySpill implements HubSpill {
+        private final Map<String, SensorsSnapshotAvro> spilled = new HashMap<>();
+
+        @Override
+        public void spill(HubState hub) {
+            spilled.put(hub.getHubId(), hub.toSnapshot());
+        }
+
+        @Override
+        public SensorsSnapshotAvro reload(String hubId) {
+            return spilled.get(hubId);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.telemetry.aggregator.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.telemetry.aggregator.configuration.AggregationProperties;
+import ru.yandex.practicum.telemetry.aggregator.service.EventTimeMetrics;
+import ru.yandex.practicum.telemetry.aggregator.service.HubCacheMetrics;
+import ru.yandex.practicum.telemetry.aggregator.service.HubState;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotAggregator;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotShard;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionStateStoreTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("telemetry.sensors.v1", 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresJournalUpToLastPosition() throws IOException {
+        writeTwoBatches();
+
+        SnapshotAggregator aggregator = new SnapshotAggregator();
+        assertEquals(2, open().restore(aggregator, Long.MAX_VALUE));
+        assertEquals(2, sensors(aggregator));
+    }
+
+    @Test
+    void stopsReplayAtCorruptedEntry() throws IOException {
+        long firstBatchEnd = writeTwoBatches();
+        try (RandomAccessFile log = new RandomAccessFile(directory.resolve("log").toFile(), "rw")) {
+            long position = firstBatchEnd + 20;
+            log.seek(position);
+            int value = log.read();
+            log.seek(position);
+            log.write(value ^ 0xFF);
+        }
+
+        SnapshotAggregator aggregator = new SnapshotAggregator();
+        assertEquals(1, open().restore(aggregator, Long.MAX_VALUE));
+        assertEquals(1, sensors(aggregator));
+    }
+
+    @Test
+    void discardsIncompleteLastEntry() throws IOException {
+        writeTwoBatches();
+        try (RandomAccessFile log = new RandomAccessFile(directory.resolve("log").toFile(), "rw")) {
+            log.setLength(log.length() - 3);
+        }
+
+        SnapshotAggregator aggregator = new SnapshotAggregator();
+        assertEquals(1, open().restore(aggregator, Long.MAX_VALUE));
+        assertEquals(1, sensors(aggregator));
+    }
+
+    @Test
+    void quarantinesUnreadableCheckpoint() throws IOException {
+        writeTwoBatches();
+        try (DataOutputStream checkpoint = new DataOutputStream(
+                Files.newOutputStream(directory.resolve("checkpoint")))) {
+            checkpoint.writeInt(0x534E4150);
+            checkpoint.writeInt(1);
+            checkpoint.writeLong(2);
+            checkpoint.writeInt(1);
+            checkpoint.writeInt(4);
+            checkpoint.writeInt(-1);
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SnapshotShard shard = new SnapshotShard(PARTITION, open(), new AggregationProperties(),
+                new HubCacheMetrics(registry), new EventTimeMetrics(registry));
+
+        assertEquals(-1, shard.restore(Long.MAX_VALUE));
+        assertTrue(shard.getAggregator().getHubs().isEmpty());
+        assertNotNull(shard.getStore());
+        try (var siblings = Files.list(directory.getParent())) {
+            assertTrue(siblings.anyMatch(path -> path.getFileName().toString()
+                    .startsWith(directory.getFileName() + ".corrupted-")));
+        }
+        shard.close();
+
+        assertEquals(-1, open().restore(new SnapshotAggregator(), Long.MAX_VALUE));
+    }
+
+    /**
+     * Пишет в журнал два пакета по одному событию.
+     *
+     * @return размер журнала после первого пакета
+     */
+    private long writeTwoBatches() throws IOException {
+        PartitionStateStore store = open();
+        store.restore(new SnapshotAggregator(), Long.MAX_VALUE);
+        store.append(0, event("switch-1"));
+        store.flush(1);
+        long firstBatchEnd = Files.size(directory.resolve("log"));
+        store.append(1, event("switch-2"));
+        store.flush(2);
+        store.close();
+        return firstBatchEnd;
+    }
+
+    private PartitionStateStore open() {
+        return new PartitionStateStore(PARTITION, directory, Duration.ofHours(1), Integer.MAX_VALUE, false);
+    }
+
+    private static int sensors(SnapshotAggregator aggregator) {
+        return aggregator.getHubs().stream().mapToInt(HubState::size).sum();
+    }
+
+    private static SensorEventAvro event(String sensorId) {
+        return SensorEventAvro.newBuilder()
+                .setId(sensorId)
+                .setHubId("hub-1")
+                .setTimestamp(Instant.ofEpochMilli(1_700_000_000_000L))
+                .setPayload(new SwitchSensorAvro(true))
+                .build();
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Главный класс приложения Analyzer.
@@ -11,6 +12,7 @@ import org.springframework.kafka.annotation.EnableKafka;
 @SpringBootApplication
 @ConfigurationPropertiesScan
 @EnableKafka
+@EnableScheduling
 public class Analyzer {
 
     public static void main(String[] args) {
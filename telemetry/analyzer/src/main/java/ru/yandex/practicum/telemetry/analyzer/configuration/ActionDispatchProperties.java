@@ -0,0 +1,54 @@
+package ru.yandex.practicum.telemetry.analyzer.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки асинхронной отправки действий сценариев в Hub Router.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "analyzer.dispatch")
+public class ActionDispatchProperties {
+
+    /**
+     * Максимальное число одновременных вызовов для одного хаба. Остальные действия хаба ждут
+     * в очереди. При значении 1 действия хаба выполняются строго по порядку, включая повторы.
+     */
+    private int maxInFlightPerHub = 1;
+
+    /**
+     * Максимальное число действий хаба в очереди; новые действия сверх него отбрасываются.
+     */
+    private int maxPendingPerHub = 1_000;
+
+    /**
+     * Таймаут одного вызова.
+     */
+    private Duration callTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Общий срок выполнения действия, включая повторы. Действие, не выполненное за это время,
+     * отбрасывается: команда, выполненная намного позже срабатывания сценария, уже не нужна.
+     */
+    private Duration deadline = Duration.ofSeconds(10);
+
+    /**
+     * Максимальное число попыток вызова, включая первую.
+     */
+    private int maxAttempts = 4;
+
+    /**
+     * Задержка перед первым повтором. Каждая следующая вдвое больше, не больше {@link #maxBackoff};
+     * фактическая задержка выбирается случайно от нуля до нее, чтобы повторы хабов не совпадали.
+     */
+    private Duration initialBackoff = Duration.ofMillis(100);
+
+    /**
+     * Максимальная задержка перед повтором.
+     */
+    private Duration maxBackoff = Duration.ofSeconds(2);
+}
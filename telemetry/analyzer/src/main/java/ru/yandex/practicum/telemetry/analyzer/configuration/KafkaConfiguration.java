@@ -7,9 +7,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import ru.yandex.practicum.kafka.telemetry.configuration.KafkaListenerFactoryBuilder;
 import ru.yandex.practicum.kafka.telemetry.deserializer.HubEventDeserializer;
-import ru.yandex.practicum.kafka.telemetry.deserializer.SnapshotDeserializer;
+import ru.yandex.practicum.kafka.telemetry.deserializer.SnapshotDeltaDeserializer;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
-import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
 
 /**
  * Конфигурация Kafka для сервиса Analyzer.
@@ -27,12 +27,16 @@ public class KafkaConfiguration {
         return KafkaListenerFactoryBuilder.create(kafkaProperties, HubEventDeserializer.class);
     }
 
+    /**
+     * Топик снапшотов читается как дельты: полный снапшот без дельта-полей
+     * десериализуется в опорный кадр, поэтому поддерживаются оба формата агрегатора.
+     */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, SensorsSnapshotAvro> snapshotListenerFactory(
+    public ConcurrentKafkaListenerContainerFactory<String, SensorsSnapshotDeltaAvro> snapshotListenerFactory(
             KafkaProperties kafkaProperties) {
         return KafkaListenerFactoryBuilder.create(
                 kafkaProperties,
-                SnapshotDeserializer.class,
+                SnapshotDeltaDeserializer.class,
                 OFFSET_RESET_LATEST
         );
     }
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.telemetry.analyzer.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки индекса сценариев в памяти.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "analyzer.scenario-index")
+public class ScenarioIndexProperties {
+
+    /**
+     * Интервал полной перезагрузки индекса из базы данных. Страховка на случай,
+     * если изменение другого экземпляра не было замечено опросом.
+     */
+    private Duration refreshInterval = Duration.ofMinutes(5);
+
+    /**
+     * Интервал опроса номеров изменений сценариев, сделанных другими экземплярами анализатора.
+     */
+    private Duration pollInterval = Duration.ofSeconds(1);
+
+    /**
+     * За какое время назад опрос просматривает изменения. Должно быть больше самой долгой
+     * транзакции обработки события хаба: изменение видно опросу только после фиксации,
+     * а время изменения - время начала транзакции.
+     */
+    private Duration changeLookback = Duration.ofMinutes(1);
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.telemetry.analyzer.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки состояния срабатывания сценариев.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "analyzer.scenario-state")
+public class ScenarioStateProperties {
+
+    /**
+     * Минимальный интервал между срабатываниями сценария по времени снапшотов.
+     * Если условия сценария снова стали выполненными раньше, действия не выполняются,
+     * и сценарий сработает только при следующем выполнении условий после интервала.
+     * Ноль отключает ограничение.
+     */
+    private Duration cooldown = Duration.ZERO;
+
+    /**
+     * Интервал сохранения измененных состояний сценариев в базу данных.
+     * После перезапуска сценарии, условия которых уже выполнялись, не срабатывают повторно.
+     */
+    private Duration checkpointInterval = Duration.ofSeconds(30);
+
+    /**
+     * Кэш истинности условий хаба, не получавшего снапшотов дольше этого времени, удаляется;
+     * проверка раз в этот же интервал. Состояние срабатывания сценариев при этом сохраняется,
+     * а следующий снапшот хаба проверяет все условия заново.
+     */
+    private Duration evaluationIdleTimeout = Duration.ofHours(1);
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.telemetry.analyzer.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "hub_scenario_versions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HubScenarioVersion {
+    @Id
+    @Column(name = "hub_id")
+    private String hubId;
+
+    @Column(name = "version")
+    private long version;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
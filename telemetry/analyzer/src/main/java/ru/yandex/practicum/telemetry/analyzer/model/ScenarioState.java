@@ -0,0 +1,28 @@
+package ru.yandex.practicum.telemetry.analyzer.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "scenario_states")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScenarioState {
+    @Id
+    @Column(name = "scenario_id")
+    private Long scenarioId;
+
+    @Column(name = "active")
+    private boolean active;
+
+    @Column(name = "last_fired")
+    private Instant lastFired;
+}
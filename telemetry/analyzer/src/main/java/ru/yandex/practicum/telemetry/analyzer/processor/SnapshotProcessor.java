@@ -5,13 +5,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.kafka.telemetry.snapshot.SnapshotReassembler;
 import ru.yandex.practicum.telemetry.analyzer.service.ScenarioAnalyzerService;
 
 import java.util.List;
 
 /**
  * Процессор для обработки снапшотов из Kafka.
+ * Дельта-снапшоты собираются в полное состояние хаба {@link SnapshotReassembler};
+ * дельты хаба, для которого еще не пришел опорный кадр, пропускаются.
+ * Анализатору передаются изменившиеся датчики: для дельты это ее датчики, для опорного
+ * кадра - отличающиеся от прежнего состояния хаба. Все условия хаба проверяются только
+ * по первому кадру хаба и после изменения его сценариев.
  */
 @Slf4j
 @Component
@@ -19,21 +25,26 @@ import java.util.List;
 public class SnapshotProcessor {
 
     private final ScenarioAnalyzerService analyzerService;
+    private final SnapshotReassembler reassembler = new SnapshotReassembler();
     
     @KafkaListener(
             topics = "${kafka.topic.snapshots}",
             groupId = "analyzer-snapshots-group",
             containerFactory = "snapshotListenerFactory"
     )
-    public void handleSnapshots(List<SensorsSnapshotAvro> snapshots, Acknowledgment acknowledgment) {
+    public void handleSnapshots(List<SensorsSnapshotDeltaAvro> snapshots, Acknowledgment acknowledgment) {
         if (snapshots.isEmpty()) {
             return;
         }
 
         log.debug("Received {} snapshots", snapshots.size());
 
-        for (SensorsSnapshotAvro snapshot : snapshots) {
-            analyzerService.analyzeSnapshot(snapshot);
+        for (SensorsSnapshotDeltaAvro snapshot : snapshots) {
+            reassembler.reassemble(snapshot).ifPresentOrElse(
+                    reassembled -> analyzerService.analyzeSnapshot(reassembled.state(), reassembled.changedSensors()),
+                    () -> log.debug("Skipping snapshot delta {} of hub {} until the next keyframe",
+                            snapshot.getVersion(), snapshot.getHubId())
+            );
             acknowledgment.acknowledge();
         }
     }
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.telemetry.analyzer.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.yandex.practicum.telemetry.analyzer.model.HubScenarioVersion;
+
+import java.util.List;
+
+public interface HubScenarioVersionRepository extends JpaRepository<HubScenarioVersion, String> {
+
+    /**
+     * Увеличивает номер изменения сценариев хаба в текущей транзакции.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO hub_scenario_versions (hub_id, version, updated_at)
+            VALUES (:hubId, 1, now())
+            ON CONFLICT (hub_id) DO UPDATE SET version = hub_scenario_versions.version + 1, updated_at = now()
+            """, nativeQuery = true)
+    void bump(@Param("hubId") String hubId);
+
+    /**
+     * Хабы, сценарии которых изменялись за последние {@code seconds} секунд по часам базы данных.
+     */
+    @Query(value = """
+            SELECT * FROM hub_scenario_versions
+            WHERE updated_at > now() - :seconds * INTERVAL '1 second'
+            """, nativeQuery = true)
+    List<HubScenarioVersion> findChangedWithin(@Param("seconds") long seconds);
+}
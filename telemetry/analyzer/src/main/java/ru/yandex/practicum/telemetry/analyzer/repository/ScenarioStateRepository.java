@@ -0,0 +1,27 @@
+package ru.yandex.practicum.telemetry.analyzer.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioState;
+
+import java.time.Instant;
+
+public interface ScenarioStateRepository extends JpaRepository<ScenarioState, Long> {
+
+    /**
+     * Сохраняет состояние одним запросом. Состояние удаленного сценария не сохраняется.
+     *
+     * @return 1, если состояние сохранено, 0 - если сценария уже нет
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO scenario_states (scenario_id, active, last_fired)
+            SELECT :scenarioId, :active, :lastFired
+            WHERE EXISTS (SELECT 1 FROM scenarios WHERE id = :scenarioId)
+            ON CONFLICT (scenario_id) DO UPDATE SET active = EXCLUDED.active, last_fired = EXCLUDED.last_fired
+            """, nativeQuery = true)
+    int upsert(@Param("scenarioId") Long scenarioId, @Param("active") boolean active,
+                @Param("lastFired") Instant lastFired);
+}
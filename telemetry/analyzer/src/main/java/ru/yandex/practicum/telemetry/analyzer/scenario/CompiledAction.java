@@ -0,0 +1,25 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
+import ru.yandex.practicum.telemetry.analyzer.model.Action;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioAction;
+
+/**
+ * Действие сценария с заранее собранным сообщением для хаб-роутера.
+ *
+ * @param sensorId идентификатор датчика действия
+ * @param action   действие в формате gRPC
+ */
+public record CompiledAction(String sensorId, DeviceActionProto action) {
+
+    static CompiledAction compile(ScenarioAction scenarioAction) {
+        Action action = scenarioAction.getAction();
+        String sensorId = scenarioAction.getSensor().getId();
+        return new CompiledAction(sensorId, DeviceActionProto.newBuilder()
+                .setSensorId(sensorId)
+                .setType(ActionTypeProto.valueOf(action.getType().name()))
+                .setValue(action.getValue() != null ? action.getValue() : 0)
+                .build());
+    }
+}
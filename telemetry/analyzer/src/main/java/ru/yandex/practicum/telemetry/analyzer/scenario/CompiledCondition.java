@@ -0,0 +1,44 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionOperation;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionType;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioCondition;
+
+/**
+ * Условие сценария, отвязанное от JPA.
+ *
+ * @param sensorId  идентификатор датчика условия
+ * @param type      показание датчика, которое проверяется
+ * @param operation операция сравнения
+ * @param value     ожидаемое значение или null, если оно не задано - такое условие не выполняется
+ * @param predicate проверка, скомпилированная из типа, операции и значения
+ */
+public record CompiledCondition(String sensorId, ConditionType type, ConditionOperation operation, Integer value,
+                                ConditionPredicate predicate) {
+
+    static CompiledCondition compile(ScenarioCondition scenarioCondition) {
+        return of(
+                scenarioCondition.getSensor().getId(),
+                scenarioCondition.getCondition().getType(),
+                scenarioCondition.getCondition().getOperation(),
+                scenarioCondition.getCondition().getValue()
+        );
+    }
+
+    /**
+     * Компилирует условие.
+     */
+    public static CompiledCondition of(String sensorId, ConditionType type, ConditionOperation operation,
+                                       Integer value) {
+        return new CompiledCondition(sensorId, type, operation, value,
+                ConditionPredicate.compile(type, operation, value));
+    }
+
+    /**
+     * Проверяет условие на соответствие состоянию датчика.
+     */
+    public boolean test(SensorStateAvro state) {
+        return predicate.test(state.getData());
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
+
+import java.util.List;
+
+/**
+ * Неизменяемая копия сценария для проверки снапшотов без обращения к базе данных.
+ *
+ * @param id         идентификатор сценария в базе данных
+ * @param name       название сценария, уникальное в пределах хаба
+ * @param conditions условия, которые должны выполняться одновременно
+ * @param actions    действия при срабатывании
+ */
+public record CompiledScenario(long id, String name, List<CompiledCondition> conditions, List<CompiledAction> actions) {
+
+    /**
+     * Копирует сценарий вместе с условиями, действиями и датчиками.
+     * Вызывается в транзакции, в которой загружены ленивые коллекции сценария.
+     */
+    public static CompiledScenario compile(Scenario scenario) {
+        return new CompiledScenario(
+                scenario.getId(),
+                scenario.getName(),
+                scenario.getConditions().stream().map(CompiledCondition::compile).toList(),
+                scenario.getActions().stream().map(CompiledAction::compile).toList()
+        );
+    }
+}
@@ -0,0 +1,121 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionOperation;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionType;
+
+/**
+ * Проверка показаний датчика, скомпилированная из условия сценария.
+ * <p>
+ * При компиляции пара ({@link ConditionType}, {@link ConditionOperation}) сводится к коду проверки,
+ * а ожидаемое значение - к примитиву. Проверка выполняет один плотный {@code switch} по коду,
+ * читает примитивное поле нужного типа показаний и не создает объектов.
+ * <p>
+ * Класс намеренно один и финальный, а не по реализации на пару: условия разных типов проверяются
+ * в одном цикле, и с одной реализацией вызов {@link #test(Object)} остается мономорфным
+ * и встраивается JIT-компилятором.
+ */
+public final class ConditionPredicate {
+
+    /**
+     * Условие, которое не выполняется никогда: ожидаемое значение не задано
+     * или операция неприменима к показанию.
+     */
+    public static final ConditionPredicate NEVER = new ConditionPredicate(0, 0);
+
+    private static final int NEVER_KIND = 0;
+    private static final int MOTION_DETECTED = 1;
+    private static final int MOTION_NOT_DETECTED = 2;
+    private static final int SWITCH_ON = 3;
+    private static final int SWITCH_OFF = 4;
+    private static final int LUMINOSITY_EQUALS = 5;
+    private static final int LUMINOSITY_GREATER = 6;
+    private static final int LUMINOSITY_LOWER = 7;
+    private static final int CO2_EQUALS = 8;
+    private static final int CO2_GREATER = 9;
+    private static final int CO2_LOWER = 10;
+    private static final int HUMIDITY_EQUALS = 11;
+    private static final int HUMIDITY_GREATER = 12;
+    private static final int HUMIDITY_LOWER = 13;
+    private static final int TEMPERATURE_EQUALS = 14;
+    private static final int TEMPERATURE_GREATER = 15;
+    private static final int TEMPERATURE_LOWER = 16;
+
+    private final int kind;
+    private final int expected;
+
+    private ConditionPredicate(int kind, int expected) {
+        this.kind = kind;
+        this.expected = expected;
+    }
+
+    /**
+     * Компилирует условие.
+     *
+     * @param value ожидаемое значение или null
+     */
+    public static ConditionPredicate compile(ConditionType type, ConditionOperation operation, Integer value) {
+        if (value == null) {
+            return NEVER;
+        }
+        // Для логических показаний сравнивается только равенство, 1 - истина
+        int kind = switch (type) {
+            case MOTION -> operation != ConditionOperation.EQUALS ? NEVER_KIND
+                    : value == 1 ? MOTION_DETECTED : MOTION_NOT_DETECTED;
+            case SWITCH -> operation != ConditionOperation.EQUALS ? NEVER_KIND
+                    : value == 1 ? SWITCH_ON : SWITCH_OFF;
+            case LUMINOSITY -> LUMINOSITY_EQUALS + ordinal(operation);
+            case CO2LEVEL -> CO2_EQUALS + ordinal(operation);
+            case HUMIDITY -> HUMIDITY_EQUALS + ordinal(operation);
+            case TEMPERATURE -> TEMPERATURE_EQUALS + ordinal(operation);
+        };
+        return kind == NEVER_KIND ? NEVER : new ConditionPredicate(kind, value);
+    }
+
+    /**
+     * Проверяет показания датчика ({@code SensorStateAvro.data}).
+     */
+    public boolean test(Object data) {
+        return switch (kind) {
+            case MOTION_DETECTED -> data instanceof MotionSensorAvro motion && motion.getMotion();
+            case MOTION_NOT_DETECTED -> data instanceof MotionSensorAvro motion && !motion.getMotion();
+            case SWITCH_ON -> data instanceof SwitchSensorAvro switchSensor && switchSensor.getState();
+            case SWITCH_OFF -> data instanceof SwitchSensorAvro switchSensor && !switchSensor.getState();
+            case LUMINOSITY_EQUALS -> data instanceof LightSensorAvro light && light.getLuminosity() == expected;
+            case LUMINOSITY_GREATER -> data instanceof LightSensorAvro light && light.getLuminosity() > expected;
+            case LUMINOSITY_LOWER -> data instanceof LightSensorAvro light && light.getLuminosity() < expected;
+            case CO2_EQUALS -> data instanceof ClimateSensorAvro climate && climate.getCo2Level() == expected;
+            case CO2_GREATER -> data instanceof ClimateSensorAvro climate && climate.getCo2Level() > expected;
+            case CO2_LOWER -> data instanceof ClimateSensorAvro climate && climate.getCo2Level() < expected;
+            case HUMIDITY_EQUALS -> data instanceof ClimateSensorAvro climate && climate.getHumidity() == expected;
+            case HUMIDITY_GREATER -> data instanceof ClimateSensorAvro climate && climate.getHumidity() > expected;
+            case HUMIDITY_LOWER -> data instanceof ClimateSensorAvro climate && climate.getHumidity() < expected;
+            // Температуру сообщают и датчики температуры, и климатические датчики
+            case TEMPERATURE_EQUALS -> data instanceof TemperatureSensorAvro temperature
+                    ? temperature.getTemperatureC() == expected
+                    : data instanceof ClimateSensorAvro climate && climate.getTemperatureC() == expected;
+            case TEMPERATURE_GREATER -> data instanceof TemperatureSensorAvro temperature
+                    ? temperature.getTemperatureC() > expected
+                    : data instanceof ClimateSensorAvro climate && climate.getTemperatureC() > expected;
+            case TEMPERATURE_LOWER -> data instanceof TemperatureSensorAvro temperature
+                    ? temperature.getTemperatureC() < expected
+                    : data instanceof ClimateSensorAvro climate && climate.getTemperatureC() < expected;
+            default -> false;
+        };
+    }
+
+    /**
+     * Смещение кода проверки для операции сравнения чисел.
+     */
+    private static int ordinal(ConditionOperation operation) {
+        return switch (operation) {
+            case EQUALS -> 0;
+            case GREATER_THAN -> 1;
+            case LOWER_THAN -> 2;
+        };
+    }
+}
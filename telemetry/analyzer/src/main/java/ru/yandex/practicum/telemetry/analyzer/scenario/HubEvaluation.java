@@ -0,0 +1,156 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кэш истинности условий сценариев одного хаба.
+ * <p>
+ * Для каждого условия хранится результат последней проверки, для каждого сценария -
+ * количество выполненных условий и то, выполнены ли они все. При новом снапшоте
+ * перепроверяются только условия изменившихся датчиков (через обратный индекс
+ * {@link HubScenarios#conditionsOf(String)}), поэтому стоимость анализа зависит от числа
+ * изменений, а не от размера хаба и количества сценариев. Сценарий срабатывает, когда
+ * его условия становятся выполненными все сразу, а не на каждом снапшоте, пока они выполнены,
+ * и не чаще одного раза за {@code cooldown} по времени снапшотов.
+ * <p>
+ * Кэш построен для конкретного набора сценариев; при его изменении создается новый кэш,
+ * который сначала проверяет все условия. Состояние срабатывания сценариев при этом
+ * берется из {@link ScenarioStateStore}, куда кэш записывает каждое его изменение.
+ * Экземпляр не потокобезопасен: снапшоты хаба приходят из одной партиции
+ * и обрабатываются одним потоком.
+ */
+@Slf4j
+public class HubEvaluation {
+
+    private final HubScenarios hubScenarios;
+    private final boolean[][] truth;
+    private final int[] satisfied;
+    private final boolean[] active;
+    private final long[] lastFired;
+    private boolean initialized;
+
+    private final ScenarioStateStore stateStore;
+    private final long cooldown;
+
+    /**
+     * Время последней проверки по часам анализатора, для удаления неиспользуемых кэшей.
+     */
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * @param cooldown минимальный интервал между срабатываниями сценария в миллисекундах
+     */
+    public HubEvaluation(HubScenarios hubScenarios, ScenarioStateStore stateStore, long cooldown) {
+        this.hubScenarios = hubScenarios;
+        this.stateStore = stateStore;
+        this.cooldown = cooldown;
+        List<CompiledScenario> scenarios = hubScenarios.scenarios();
+        this.truth = new boolean[scenarios.size()][];
+        for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+            truth[scenario] = new boolean[scenarios.get(scenario).conditions().size()];
+        }
+        this.satisfied = new int[scenarios.size()];
+        this.active = new boolean[scenarios.size()];
+        this.lastFired = new long[scenarios.size()];
+        for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+            ScenarioFiring firing = stateStore.get(scenarios.get(scenario).id());
+            active[scenario] = firing.active();
+            lastFired[scenario] = firing.lastFired();
+        }
+    }
+
+    /**
+     * Построен ли кэш для этого набора сценариев.
+     */
+    public boolean isFor(HubScenarios scenarios) {
+        return hubScenarios == scenarios;
+    }
+
+    /**
+     * Время последней проверки снапшота в миллисекундах по часам анализатора.
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Обновляет истинность условий по снапшоту.
+     *
+     * @param timestamp      время снапшота в миллисекундах
+     * @param sensorStates   состояния датчиков хаба
+     * @param changedSensors датчики, изменившиеся с предыдущего снапшота, или null, если это
+     *                       неизвестно - тогда проверяются все условия
+     * @return сценарии, которые должны сработать
+     */
+    public List<CompiledScenario> evaluate(long timestamp, Map<String, SensorStateAvro> sensorStates,
+                                           Collection<String> changedSensors) {
+        lastUsed = System.currentTimeMillis();
+        List<CompiledScenario> scenarios = hubScenarios.scenarios();
+        List<CompiledScenario> triggered = new ArrayList<>();
+
+        if (changedSensors == null || !initialized) {
+            for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+                List<CompiledCondition> conditions = scenarios.get(scenario).conditions();
+                for (int condition = 0; condition < conditions.size(); condition++) {
+                    update(scenario, condition, sensorStates);
+                }
+            }
+            for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+                refresh(scenario, timestamp, triggered);
+            }
+            initialized = true;
+            return triggered;
+        }
+
+        for (String sensorId : changedSensors) {
+            for (HubScenarios.ConditionRef ref : hubScenarios.conditionsOf(sensorId)) {
+                if (update(ref.scenario(), ref.condition(), sensorStates)) {
+                    refresh(ref.scenario(), timestamp, triggered);
+                }
+            }
+        }
+        return triggered;
+    }
+
+    /**
+     * Перепроверяет условие.
+     *
+     * @return true, если его истинность изменилась
+     */
+    private boolean update(int scenario, int condition, Map<String, SensorStateAvro> sensorStates) {
+        CompiledCondition compiled = hubScenarios.scenarios().get(scenario).conditions().get(condition);
+        SensorStateAvro state = sensorStates.get(compiled.sensorId());
+        boolean value = state != null && compiled.test(state);
+        if (truth[scenario][condition] == value) {
+            return false;
+        }
+        truth[scenario][condition] = value;
+        satisfied[scenario] += value ? 1 : -1;
+        return true;
+    }
+
+    private void refresh(int scenario, long timestamp, List<CompiledScenario> triggered) {
+        boolean nowActive = satisfied[scenario] == truth[scenario].length;
+        if (nowActive == active[scenario]) {
+            return;
+        }
+        active[scenario] = nowActive;
+
+        CompiledScenario compiled = hubScenarios.scenarios().get(scenario);
+        if (nowActive) {
+            if (lastFired[scenario] != ScenarioFiring.NEVER_FIRED && timestamp - lastFired[scenario] < cooldown) {
+                log.debug("Scenario {} is cooling down, skipping actions", compiled.name());
+            } else {
+                lastFired[scenario] = timestamp;
+                triggered.add(compiled);
+            }
+        }
+        stateStore.update(compiled.id(), new ScenarioFiring(nowActive, lastFired[scenario]));
+    }
+}
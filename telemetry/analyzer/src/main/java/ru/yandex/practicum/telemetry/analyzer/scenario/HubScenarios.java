@@ -0,0 +1,54 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый набор сценариев хаба с обратным индексом от датчика к условиям,
+ * которые от него зависят.
+ */
+public final class HubScenarios {
+
+    public static final HubScenarios EMPTY = new HubScenarios(List.of());
+
+    private final List<CompiledScenario> scenarios;
+    private final Map<String, List<ConditionRef>> conditionsBySensor;
+
+    /**
+     * Ссылка на условие: номер сценария в {@link #scenarios()} и номер условия в сценарии.
+     */
+    public record ConditionRef(int scenario, int condition) {
+    }
+
+    public HubScenarios(List<CompiledScenario> scenarios) {
+        this.scenarios = List.copyOf(scenarios);
+
+        Map<String, List<ConditionRef>> bySensor = new HashMap<>();
+        for (int scenario = 0; scenario < this.scenarios.size(); scenario++) {
+            List<CompiledCondition> conditions = this.scenarios.get(scenario).conditions();
+            for (int condition = 0; condition < conditions.size(); condition++) {
+                bySensor.computeIfAbsent(conditions.get(condition).sensorId(), id -> new ArrayList<>())
+                        .add(new ConditionRef(scenario, condition));
+            }
+        }
+        bySensor.replaceAll((sensorId, refs) -> List.copyOf(refs));
+        this.conditionsBySensor = Map.copyOf(bySensor);
+    }
+
+    public List<CompiledScenario> scenarios() {
+        return scenarios;
+    }
+
+    /**
+     * Условия, зависящие от датчика.
+     */
+    public List<ConditionRef> conditionsOf(String sensorId) {
+        return conditionsBySensor.getOrDefault(sensorId, List.of());
+    }
+
+    public boolean isEmpty() {
+        return scenarios.isEmpty();
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+/**
+ * Состояние срабатывания сценария.
+ *
+ * @param active    выполнены ли сейчас все условия сценария
+ * @param lastFired время снапшота последнего срабатывания в миллисекундах
+ *                  или {@link #NEVER_FIRED}
+ */
+public record ScenarioFiring(boolean active, long lastFired) {
+
+    public static final long NEVER_FIRED = Long.MIN_VALUE;
+
+    public static final ScenarioFiring INITIAL = new ScenarioFiring(false, NEVER_FIRED);
+}
@@ -0,0 +1,299 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.telemetry.analyzer.configuration.ScenarioIndexProperties;
+import ru.yandex.practicum.telemetry.analyzer.model.HubScenarioVersion;
+import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
+import ru.yandex.practicum.telemetry.analyzer.repository.HubScenarioVersionRepository;
+import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Сценарии хабов в памяти анализатора.
+ * <p>
+ * Индекс загружается из базы данных при запуске, до старта слушателей Kafka, и дальше
+ * обновляется {@code HubEventService} после фиксации транзакции, изменившей сценарий.
+ * <p>
+ * События хабов читаются группой потребителей, поэтому сценарий может изменить другой
+ * экземпляр анализатора. Каждое изменение увеличивает номер изменения хаба
+ * ({@link HubScenarioVersionRepository#bump}) в той же транзакции, а индекс раз в
+ * {@code analyzer.scenario-index.poll-interval} читает недавно измененные хабы и перечитывает
+ * сценарии тех, чей номер отличается от известного. Полная перезагрузка раз в
+ * {@code analyzer.scenario-index.refresh-interval} остается страховкой.
+ * <p>
+ * Локальные изменения, примененные, пока индекс читал базу данных, повторяются поверх
+ * прочитанного, чтобы чтение не вернуло устаревшие сценарии и не потеряло новые.
+ * Состояние срабатывания сценариев, удаленных другим экземпляром, удаляется вместе с ними.
+ * <p>
+ * Чтение ({@link #scenarios(String)}) не блокируется и не обращается к базе данных:
+ * сценарии хаба вместе с обратным индексом по датчикам ({@link HubScenarios}) неизменяемы
+ * и при изменении заменяются целиком.
+ */
+@Slf4j
+@Component
+public class ScenarioIndex {
+
+    private final ScenarioRepository scenarioRepository;
+    private final HubScenarioVersionRepository hubScenarioVersionRepository;
+    private final ScenarioStateStore scenarioStateStore;
+    private final ScenarioIndexProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Map<String, HubScenarios> scenarios = new ConcurrentHashMap<>();
+
+    /**
+     * Известные номера изменений хабов, прочитанные опросом.
+     */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Локальные изменения, примененные во время чтения базы данных, или null, если чтения нет.
+     * Изменяется под монитором индекса.
+     */
+    private List<LocalChange> changesDuringRead;
+
+    /**
+     * Не дает опросу и перезагрузке читать базу данных одновременно. Отдельный от монитора
+     * индекса, чтобы локальные изменения не ждали чтения.
+     */
+    private final Object refreshLock = new Object();
+
+    public ScenarioIndex(ScenarioRepository scenarioRepository,
+                         HubScenarioVersionRepository hubScenarioVersionRepository,
+                         ScenarioStateStore scenarioStateStore,
+                         ScenarioIndexProperties properties,
+                         PlatformTransactionManager transactionManager) {
+        this.scenarioRepository = scenarioRepository;
+        this.hubScenarioVersionRepository = hubScenarioVersionRepository;
+        this.scenarioStateStore = scenarioStateStore;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        reload();
+        log.info("Scenario index loaded: {} hubs, {} scenarios", scenarios.size(),
+                scenarios.values().stream().mapToInt(hub -> hub.scenarios().size()).sum());
+    }
+
+    /**
+     * Сценарии хаба.
+     */
+    public HubScenarios scenarios(String hubId) {
+        return scenarios.getOrDefault(hubId, HubScenarios.EMPTY);
+    }
+
+    /**
+     * Добавляет или заменяет сценарий хаба после фиксации текущей транзакции.
+     * Вызывается в транзакции, изменившей сценарий: в ней же увеличивается номер изменения хаба.
+     */
+    public void put(String hubId, CompiledScenario scenario) {
+        hubScenarioVersionRepository.bump(hubId);
+        afterCommit(() -> update(hubId, current -> {
+            List<CompiledScenario> updated = new ArrayList<>(current);
+            updated.removeIf(existing -> existing.name().equals(scenario.name()));
+            updated.add(scenario);
+            return updated;
+        }));
+    }
+
+    /**
+     * Удаляет сценарий хаба и его состояние срабатывания после фиксации текущей транзакции.
+     * Вызывается в транзакции, удалившей сценарий.
+     */
+    public void remove(String hubId, long scenarioId) {
+        hubScenarioVersionRepository.bump(hubId);
+        afterCommit(() -> {
+            update(hubId, current -> {
+                List<CompiledScenario> updated = new ArrayList<>(current);
+                updated.removeIf(existing -> existing.id() == scenarioId);
+                return updated;
+            });
+            scenarioStateStore.remove(scenarioId);
+        });
+    }
+
+    /**
+     * Перечитывает сценарии хабов, измененных другими экземплярами анализатора.
+     */
+    @Scheduled(
+            initialDelayString = "${analyzer.scenario-index.poll-interval:1s}",
+            fixedDelayString = "${analyzer.scenario-index.poll-interval:1s}"
+    )
+    public void pollChanges() {
+        synchronized (refreshLock) {
+            Map<String, Long> changed = new HashMap<>();
+            List<HubScenarioVersion> recent = transactionTemplate.execute(status ->
+                    hubScenarioVersionRepository.findChangedWithin(properties.getChangeLookback().toSeconds()));
+            for (HubScenarioVersion hub : recent) {
+                if (versions.getOrDefault(hub.getHubId(), 0L) != hub.getVersion()) {
+                    changed.put(hub.getHubId(), hub.getVersion());
+                }
+            }
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            replace(read(() -> {
+                Map<String, List<CompiledScenario>> byHub = new HashMap<>();
+                for (String hubId : changed.keySet()) {
+                    byHub.put(hubId, compile(scenarioRepository.findByHubId(hubId)));
+                }
+                return byHub;
+            }), changed.keySet());
+
+            versions.putAll(changed);
+            log.debug("Scenarios of {} hubs reloaded after changes by other instances", changed.size());
+        }
+    }
+
+    /**
+     * Перезагружает индекс из базы данных.
+     */
+    @Scheduled(
+            initialDelayString = "${analyzer.scenario-index.refresh-interval:5m}",
+            fixedDelayString = "${analyzer.scenario-index.refresh-interval:5m}"
+    )
+    public void reload() {
+        synchronized (refreshLock) {
+            replace(read(() -> {
+                Map<String, List<CompiledScenario>> byHub = new HashMap<>();
+                for (Scenario scenario : scenarioRepository.findAll()) {
+                    byHub.computeIfAbsent(scenario.getHubId(), hubId -> new ArrayList<>())
+                            .add(CompiledScenario.compile(scenario));
+                }
+                return byHub;
+            }), null);
+        }
+    }
+
+    /**
+     * Читает сценарии из базы данных, запоминая локальные изменения, примененные за время чтения.
+     */
+    private Map<String, List<CompiledScenario>> read(Supplier<Map<String, List<CompiledScenario>>> query) {
+        synchronized (this) {
+            changesDuringRead = new ArrayList<>();
+        }
+        try {
+            return transactionTemplate.execute(status -> query.get());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changesDuringRead = null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Заменяет сценарии хабов прочитанными, повторив поверх них локальные изменения,
+     * примененные во время чтения. Изменения идемпотентны, поэтому повтор изменения,
+     * которое уже попало в прочитанные данные, ничего не меняет.
+     *
+     * @param hubIds перечитанные хабы или null, если перечитан весь индекс
+     */
+    private synchronized void replace(Map<String, List<CompiledScenario>> loaded, Set<String> hubIds) {
+        Map<String, HubScenarios> fresh = new HashMap<>();
+        loaded.forEach((hubId, hubScenarios) -> {
+            if (!hubScenarios.isEmpty()) {
+                fresh.put(hubId, new HubScenarios(hubScenarios));
+            }
+        });
+        for (LocalChange change : changesDuringRead) {
+            if (hubIds == null || hubIds.contains(change.hubId())) {
+                apply(fresh, change.hubId(), change.change());
+            }
+        }
+        changesDuringRead = null;
+
+        Map<String, HubScenarios> before;
+        if (hubIds == null) {
+            before = scenarios;
+            scenarios = new ConcurrentHashMap<>(fresh);
+        } else {
+            before = new HashMap<>();
+            for (String hubId : hubIds) {
+                HubScenarios previous = fresh.containsKey(hubId)
+                        ? scenarios.put(hubId, fresh.get(hubId))
+                        : scenarios.remove(hubId);
+                if (previous != null) {
+                    before.put(hubId, previous);
+                }
+            }
+        }
+        forgetRemoved(before);
+    }
+
+    /**
+     * Удаляет состояние срабатывания сценариев, которых больше нет в индексе,
+     * например удаленных другим экземпляром.
+     */
+    private void forgetRemoved(Map<String, HubScenarios> before) {
+        before.forEach((hubId, previous) -> {
+            HubScenarios current = scenarios(hubId);
+            for (CompiledScenario scenario : previous.scenarios()) {
+                if (current.scenarios().stream().noneMatch(existing -> existing.id() == scenario.id())) {
+                    scenarioStateStore.remove(scenario.id());
+                }
+            }
+        });
+    }
+
+    private synchronized void update(String hubId, UnaryOperator<List<CompiledScenario>> change) {
+        apply(scenarios, hubId, change);
+        if (changesDuringRead != null) {
+            changesDuringRead.add(new LocalChange(hubId, change));
+        }
+    }
+
+    private static void apply(Map<String, HubScenarios> target, String hubId,
+                              UnaryOperator<List<CompiledScenario>> change) {
+        target.compute(hubId, (id, current) -> {
+            List<CompiledScenario> updated = change.apply(current == null ? List.of() : current.scenarios());
+            return updated.isEmpty() ? null : new HubScenarios(updated);
+        });
+    }
+
+    private static List<CompiledScenario> compile(List<Scenario> hubScenarios) {
+        List<CompiledScenario> compiled = new ArrayList<>(hubScenarios.size());
+        for (Scenario scenario : hubScenarios) {
+            compiled.add(CompiledScenario.compile(scenario));
+        }
+        return compiled;
+    }
+
+    private static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+
+    /**
+     * Локальное изменение сценариев хаба.
+     */
+    private record LocalChange(String hubId, UnaryOperator<List<CompiledScenario>> change) {
+    }
+}
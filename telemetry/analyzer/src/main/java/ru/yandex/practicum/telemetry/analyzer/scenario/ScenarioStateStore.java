@@ -0,0 +1,129 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioState;
+import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioStateRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Состояния срабатывания сценариев в памяти с периодической контрольной точкой в базе данных.
+ * <p>
+ * Состояния загружаются при запуске, до старта слушателей Kafka, и по ним {@link HubEvaluation}
+ * продолжает отслеживать переходы: сценарий, условия которого выполнялись до перезапуска
+ * или до изменения другого сценария хаба, не срабатывает повторно.
+ * Изменившиеся состояния сохраняются раз в {@code analyzer.scenario-state.checkpoint-interval}
+ * и при остановке; изменения после последней контрольной точки при сбое теряются.
+ * <p>
+ * Состояние относится к сценарию, а не к его условиям: при изменении условий сценария
+ * оно сохраняется. Состояние удаленного сценария удаляется вместе с ним.
+ */
+@Slf4j
+@Component
+public class ScenarioStateStore {
+
+    private final ScenarioStateRepository scenarioStateRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Последнее известное состояние сценариев по идентификатору сценария.
+     */
+    private final Map<Long, ScenarioFiring> states = new ConcurrentHashMap<>();
+
+    /**
+     * Состояния, изменившиеся после последней контрольной точки.
+     */
+    private final Map<Long, ScenarioFiring> dirty = new ConcurrentHashMap<>();
+
+    public ScenarioStateStore(ScenarioStateRepository scenarioStateRepository,
+                              PlatformTransactionManager transactionManager) {
+        this.scenarioStateRepository = scenarioStateRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void load() {
+        for (ScenarioState state : scenarioStateRepository.findAll()) {
+            states.put(state.getScenarioId(), new ScenarioFiring(state.isActive(),
+                    state.getLastFired() == null ? ScenarioFiring.NEVER_FIRED : state.getLastFired().toEpochMilli()));
+        }
+        log.info("Scenario states loaded: {}", states.size());
+    }
+
+    /**
+     * Состояние сценария.
+     */
+    public ScenarioFiring get(long scenarioId) {
+        return states.getOrDefault(scenarioId, ScenarioFiring.INITIAL);
+    }
+
+    /**
+     * Запоминает новое состояние сценария до следующей контрольной точки.
+     */
+    public void update(long scenarioId, ScenarioFiring firing) {
+        states.put(scenarioId, firing);
+        dirty.put(scenarioId, firing);
+    }
+
+    /**
+     * Забывает состояние удаленного сценария. Строка в базе данных удаляется вместе со сценарием.
+     */
+    public void remove(long scenarioId) {
+        states.remove(scenarioId);
+        dirty.remove(scenarioId);
+    }
+
+    /**
+     * Сохраняет изменившиеся состояния.
+     * <p>
+     * Состояние, записанное проверкой, начавшейся до удаления сценария, в базу данных
+     * не попадает ({@link ScenarioStateRepository#upsert}) и здесь же удаляется из памяти.
+     */
+    @Scheduled(
+            initialDelayString = "${analyzer.scenario-state.checkpoint-interval:30s}",
+            fixedDelayString = "${analyzer.scenario-state.checkpoint-interval:30s}"
+    )
+    public void checkpoint() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Map<Long, ScenarioFiring> batch = new HashMap<>(dirty);
+        List<Long> removed = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach((scenarioId, firing) -> {
+                int saved = scenarioStateRepository.upsert(scenarioId, firing.active(),
+                        firing.lastFired() == ScenarioFiring.NEVER_FIRED
+                                ? null
+                                : Instant.ofEpochMilli(firing.lastFired()));
+                if (saved == 0) {
+                    removed.add(scenarioId);
+                }
+            }));
+        } catch (RuntimeException e) {
+            log.warn("Failed to checkpoint {} scenario states, retrying at the next checkpoint", batch.size(), e);
+            return;
+        }
+
+        // Состояния, изменившиеся во время сохранения, остаются до следующей контрольной точки
+        batch.forEach(dirty::remove);
+        removed.forEach(scenarioId -> states.remove(scenarioId, batch.get(scenarioId)));
+        log.debug("Checkpointed {} scenario states", batch.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        checkpoint();
+    }
+}
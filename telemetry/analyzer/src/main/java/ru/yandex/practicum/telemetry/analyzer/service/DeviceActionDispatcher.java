@@ -0,0 +1,246 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Empty;
+import io.grpc.Status;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.client.inject.GrpcClient;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionRequest;
+import ru.yandex.practicum.grpc.telemetry.hubrouter.HubRouterControllerGrpc.HubRouterControllerFutureStub;
+import ru.yandex.practicum.telemetry.analyzer.configuration.ActionDispatchProperties;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная отправка действий сценариев в Hub Router.
+ * <p>
+ * {@link #dispatch(DeviceActionRequest)} только ставит действие в очередь хаба и не ждет вызова,
+ * поэтому поток слушателя снапшотов не блокируется на задержках gRPC. Для каждого хаба выполняется
+ * не больше {@link ActionDispatchProperties#getMaxInFlightPerHub()} вызовов одновременно;
+ * следующее действие хаба отправляется по завершении предыдущего. Завершения вызовов и повторы
+ * обрабатываются одним потоком диспетчера: он только пишет в журнал и запускает асинхронные вызовы.
+ * <p>
+ * Каждый вызов ограничен таймаутом, действие в целом - общим сроком. Вызовы, завершившиеся
+ * временной ошибкой (сервис недоступен, перегружен, истек таймаут), повторяются с экспоненциальной
+ * задержкой со случайным разбросом; на время задержки действие сохраняет место в лимите хаба,
+ * чтобы не нарушать порядок действий.
+ * <p>
+ * Очередь хаба существует, пока у него есть действия в очереди или в обработке,
+ * поэтому число очередей ограничено хабами с неотправленными действиями.
+ */
+@Slf4j
+@Component
+public class DeviceActionDispatcher {
+
+    private static final Set<Status.Code> RETRYABLE = EnumSet.of(
+            Status.Code.UNAVAILABLE,
+            Status.Code.DEADLINE_EXCEEDED,
+            Status.Code.RESOURCE_EXHAUSTED,
+            Status.Code.ABORTED
+    );
+
+    @GrpcClient("hub-router")
+    private HubRouterControllerFutureStub hubRouterClient;
+
+    private final ActionDispatchProperties properties;
+    private final ScheduledExecutorService dispatchExecutor;
+
+    private final Map<String, HubQueue> hubs = new ConcurrentHashMap<>();
+
+    public DeviceActionDispatcher(ActionDispatchProperties properties) {
+        this.properties = properties;
+        this.dispatchExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-action-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит действие в очередь хаба.
+     */
+    public void dispatch(DeviceActionRequest request) {
+        PendingAction action = new PendingAction(request, System.nanoTime() + properties.getDeadline().toNanos());
+        while (!hubs.computeIfAbsent(request.getHubId(), HubQueue::new).submit(action)) {
+            // Очередь опустела и удалена между поиском и постановкой - берем новую
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        dispatchExecutor.shutdownNow();
+        int pending = hubs.values().stream().mapToInt(HubQueue::pending).sum();
+        if (pending > 0) {
+            log.warn("Dropping {} device actions not sent before shutdown", pending);
+        }
+    }
+
+    private void send(HubQueue hub, PendingAction action) {
+        long remaining = action.deadline - System.nanoTime();
+        if (remaining <= 0) {
+            log.error("Deadline exceeded for action {} of scenario {} on hub {} after {} attempts",
+                    action.request.getAction().getType(), action.request.getScenarioName(), hub.hubId, action.attempts);
+            hub.release();
+            return;
+        }
+
+        action.attempts++;
+        ListenableFuture<Empty> response;
+        try {
+            response = hubRouterClient
+                    .withDeadlineAfter(Math.min(properties.getCallTimeout().toNanos(), remaining), TimeUnit.NANOSECONDS)
+                    .handleDeviceAction(action.request);
+        } catch (RuntimeException e) {
+            response = Futures.immediateFailedFuture(e);
+        }
+
+        Futures.addCallback(response, new FutureCallback<>() {
+            @Override
+            public void onSuccess(Empty result) {
+                log.info("Executed action {} on sensor {} for scenario {}",
+                        action.request.getAction().getType(), action.request.getAction().getSensorId(),
+                        action.request.getScenarioName());
+                hub.release();
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                retryOrFail(hub, action, failure);
+            }
+        }, dispatchExecutor);
+    }
+
+    private void retryOrFail(HubQueue hub, PendingAction action, Throwable failure) {
+        Status status = Status.fromThrowable(failure);
+        if (RETRYABLE.contains(status.getCode()) && action.attempts < properties.getMaxAttempts()) {
+            long backoff = backoff(action.attempts);
+            if (System.nanoTime() + backoff < action.deadline) {
+                log.debug("Action for scenario {} on hub {} failed with {}, retrying in {} ms",
+                        action.request.getScenarioName(), hub.hubId, status.getCode(),
+                        TimeUnit.NANOSECONDS.toMillis(backoff));
+                try {
+                    dispatchExecutor.schedule(() -> send(hub, action), backoff, TimeUnit.NANOSECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    log.debug("Dispatcher is shut down, giving up", e);
+                }
+            }
+        }
+
+        log.error("Error executing action {} for scenario {} on hub {} after {} attempts",
+                action.request.getAction().getType(), action.request.getScenarioName(), hub.hubId,
+                action.attempts, failure);
+        hub.release();
+    }
+
+    /**
+     * Задержка перед повтором: случайное значение от нуля до экспоненциально растущей границы.
+     */
+    private long backoff(int attempts) {
+        long initial = properties.getInitialBackoff().toNanos();
+        long max = properties.getMaxBackoff().toNanos();
+        long bound = initial << Math.min(attempts - 1, 30);
+        if (bound <= 0 || bound > max) {
+            bound = max;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private static final class PendingAction {
+        private final DeviceActionRequest request;
+        private final long deadline;
+        private int attempts;
+
+        private PendingAction(DeviceActionRequest request, long deadline) {
+            this.request = request;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Очередь действий одного хаба с ограничением одновременных вызовов.
+     */
+    private final class HubQueue {
+        private final String hubId;
+        private final ArrayDeque<PendingAction> queue = new ArrayDeque<>();
+        private int inFlight;
+
+        /**
+         * Очередь удалена из {@link #hubs}; новые действия ставятся в новую очередь хаба.
+         */
+        private boolean removed;
+
+        private HubQueue(String hubId) {
+            this.hubId = hubId;
+        }
+
+        /**
+         * Ставит действие в очередь.
+         *
+         * @return false, если очередь уже удалена и действие нужно поставить в новую
+         */
+        boolean submit(PendingAction action) {
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                if (queue.size() >= properties.getMaxPendingPerHub()) {
+                    log.warn("Too many pending actions for hub {}, dropping action {} of scenario {}",
+                            hubId, action.request.getAction().getType(), action.request.getScenarioName());
+                    return true;
+                }
+                queue.addLast(action);
+            }
+            pump();
+            return true;
+        }
+
+        /**
+         * Освобождает место завершенного действия и отправляет следующее.
+         * Опустевшая очередь удаляется.
+         */
+        void release() {
+            synchronized (this) {
+                inFlight--;
+            }
+            pump();
+        }
+
+        synchronized int pending() {
+            return queue.size() + inFlight;
+        }
+
+        private void pump() {
+            List<PendingAction> ready = new ArrayList<>();
+            synchronized (this) {
+                while (inFlight < properties.getMaxInFlightPerHub() && !queue.isEmpty()) {
+                    inFlight++;
+                    ready.add(queue.pollFirst());
+                }
+                if (inFlight == 0 && queue.isEmpty()) {
+                    removed = true;
+                    hubs.remove(hubId, this);
+                }
+            }
+            // Вызовы выполняются вне блокировки очереди
+            for (PendingAction action : ready) {
+                send(this, action);
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.kafka.telemetry.event.*;
 import ru.yandex.practicum.telemetry.analyzer.model.*;
 import ru.yandex.practicum.telemetry.analyzer.repository.*;
+import ru.yandex.practicum.telemetry.analyzer.scenario.CompiledScenario;
+import ru.yandex.practicum.telemetry.analyzer.scenario.ScenarioIndex;
 
 import java.util.*;
 import java.util.function.Function;
@@ -15,6 +17,7 @@ import java.util.stream.Collectors;
 /**
  * Сервис для обработки событий от хабов.
  * Обрабатывает добавление/удаление устройств и сценариев.
+ * Измененные сценарии после фиксации транзакции попадают в {@link ScenarioIndex}.
  */
 @Slf4j
 @Service
@@ -25,6 +28,7 @@ public class HubEventService {
     private final ScenarioRepository scenarioRepository;
     private final ConditionRepository conditionRepository;
     private final ActionRepository actionRepository;
+    private final ScenarioIndex scenarioIndex;
 
     /**
      * Обрабатывает событие от хаба.
@@ -90,6 +94,7 @@ public class HubEventService {
                 processActions(scenario, event.getActions(), sensorsMap);
 
                 scenarioRepository.save(scenario);
+                scenarioIndex.put(hubId, CompiledScenario.compile(scenario));
                 log.info("Updated scenario: {} for hub: {}", scenarioName, hubId);
             } else {
                 log.debug("Scenario {} for hub {} unchanged, skipping", scenarioName, hubId);
@@ -110,6 +115,7 @@ public class HubEventService {
             processActions(scenario, event.getActions(), sensorsMap);
 
             scenarioRepository.save(scenario);
+            scenarioIndex.put(hubId, CompiledScenario.compile(scenario));
             log.info("Added scenario: {} for hub: {}", scenarioName, hubId);
         }
     }
@@ -119,6 +125,7 @@ public class HubEventService {
 
         scenarioRepository.findByHubIdAndName(hubId, scenarioName).ifPresent(scenario -> {
             scenarioRepository.delete(scenario);
+            scenarioIndex.remove(hubId, scenario.getId());
             log.info("Removed scenario: {} from hub: {}", scenarioName, hubId);
         });
     }
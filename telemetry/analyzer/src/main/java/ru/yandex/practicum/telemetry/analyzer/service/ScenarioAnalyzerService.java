@@ -3,169 +3,126 @@ package ru.yandex.practicum.telemetry.analyzer.service;
 import com.google.protobuf.Timestamp;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.devh.boot.grpc.client.inject.GrpcClient;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import ru.yandex.practicum.grpc.telemetry.event.*;
-import ru.yandex.practicum.grpc.telemetry.hubrouter.HubRouterControllerGrpc.HubRouterControllerBlockingStub;
-import ru.yandex.practicum.kafka.telemetry.event.*;
-import ru.yandex.practicum.telemetry.analyzer.model.*;
-import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioRepository;
-
-import java.util.List;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionRequest;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.analyzer.configuration.ScenarioStateProperties;
+import ru.yandex.practicum.telemetry.analyzer.scenario.CompiledAction;
+import ru.yandex.practicum.telemetry.analyzer.scenario.CompiledScenario;
+import ru.yandex.practicum.telemetry.analyzer.scenario.HubEvaluation;
+import ru.yandex.practicum.telemetry.analyzer.scenario.HubScenarios;
+import ru.yandex.practicum.telemetry.analyzer.scenario.ScenarioIndex;
+import ru.yandex.practicum.telemetry.analyzer.scenario.ScenarioStateStore;
+
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Сервис для анализа сценариев и выполнения действий.
+ * Сценарии берутся из {@link ScenarioIndex}, поэтому анализ снапшота не обращается к базе данных.
+ * <p>
+ * Истинность условий кэшируется по хабам ({@link HubEvaluation}): по снапшоту
+ * перепроверяются только условия изменившихся датчиков, а сценарий выполняется, когда
+ * все его условия становятся выполненными, с ограничением частоты
+ * {@link ScenarioStateProperties#getCooldown()}. Состояние срабатывания сценариев
+ * переживает перезапуск через {@link ScenarioStateStore}. Действия отправляются
+ * {@link DeviceActionDispatcher} без ожидания ответа Hub Router.
+ * <p>
+ * Кэши хабов без снапшотов дольше {@link ScenarioStateProperties#getEvaluationIdleTimeout()}
+ * и хабов, сценарии которых изменились, удаляются ({@link #evictEvaluations()}).
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ScenarioAnalyzerService {
 
-    @GrpcClient("hub-router")
-    private HubRouterControllerBlockingStub hubRouterClient;
+    private final ScenarioIndex scenarioIndex;
+    private final DeviceActionDispatcher actionDispatcher;
+    private final ScenarioStateStore scenarioStateStore;
+    private final ScenarioStateProperties scenarioStateProperties;
 
-    private final ScenarioRepository scenarioRepository;
+    private final Map<String, HubEvaluation> evaluations = new ConcurrentHashMap<>();
 
     /**
-     * Анализирует снапшот и выполняет подходящие сценарии.
+     * Анализирует снапшот, проверяя все условия сценариев хаба.
      */
-    @Transactional(readOnly = true)
     public void analyzeSnapshot(SensorsSnapshotAvro snapshot) {
+        analyzeSnapshot(snapshot, null);
+    }
+
+    /**
+     * Анализирует снапшот и выполняет сценарии, условия которых стали выполненными.
+     *
+     * @param changedSensors датчики, изменившиеся с предыдущего снапшота хаба,
+     *                       или null, если это неизвестно
+     */
+    public void analyzeSnapshot(SensorsSnapshotAvro snapshot, Collection<String> changedSensors) {
         String hubId = snapshot.getHubId();
         log.debug("Analyzing snapshot for hub: {}", hubId);
 
-        // Загружаем все сценарии для данного хаба
-        List<Scenario> scenarios = scenarioRepository.findByHubId(hubId);
+        HubScenarios scenarios = scenarioIndex.scenarios(hubId);
 
         if (scenarios.isEmpty()) {
             log.debug("No scenarios found for hub: {}", hubId);
+            evaluations.remove(hubId);
             return;
         }
 
-        // Получаем карту состояний датчиков (ключ - id датчика, значение - состояние)
-        Map<String, SensorStateAvro> sensorStates = snapshot.getSensorsState();
+        // Кэш строится заново, если сценарии хаба изменились
+        HubEvaluation evaluation = evaluations.compute(hubId, (id, current) ->
+                current != null && current.isFor(scenarios)
+                        ? current
+                        : new HubEvaluation(scenarios, scenarioStateStore, scenarioStateProperties.getCooldown().toMillis()));
 
-        // Проверяем каждый сценарий
-        for (Scenario scenario : scenarios) {
+        for (CompiledScenario scenario : evaluation.evaluate(
+                snapshot.getTimestamp().toEpochMilli(), snapshot.getSensorsState(), changedSensors)) {
             try {
-                if (checkScenarioConditions(scenario, sensorStates)) {
-                    log.info("Scenario {} triggered for hub {}", scenario.getName(), hubId);
-                    executeScenarioActions(scenario, snapshot);
-                }
+                log.info("Scenario {} triggered for hub {}", scenario.name(), hubId);
+                executeScenarioActions(scenario, snapshot);
             } catch (Exception e) {
-                log.error("Error processing scenario {} for hub {}", scenario.getName(), hubId, e);
-            }
-        }
-    }
-
-    /**
-     * Проверяет, выполняются ли все условия сценария.
-     */
-    private boolean checkScenarioConditions(Scenario scenario, Map<String, SensorStateAvro> sensorStates) {
-        for (ScenarioCondition scenarioCondition : scenario.getConditions()) {
-            Condition condition = scenarioCondition.getCondition();
-            String sensorId = scenarioCondition.getSensor().getId();
-
-            SensorStateAvro state = sensorStates.get(sensorId);
-            if (state == null) {
-                log.debug("Sensor {} not found in snapshot", sensorId);
-                return false;
-            }
-
-            if (!checkCondition(condition, state)) {
-                return false;
+                log.error("Error processing scenario {} for hub {}", scenario.name(), hubId, e);
             }
         }
-
-        return true;
     }
 
     /**
-     * Проверяет одно условие на соответствие состоянию датчика.
+     * Удаляет кэши хабов, которые давно не присылали снапшотов (например, партиция ушла
+     * к другому экземпляру), и кэши устаревших наборов сценариев.
      */
-    private boolean checkCondition(Condition condition, SensorStateAvro state) {
-        Object sensorValue = extractSensorValue(condition.getType(), state);
-
-        if (sensorValue == null) {
-            return false;
+    @Scheduled(
+            initialDelayString = "${analyzer.scenario-state.evaluation-idle-timeout:1h}",
+            fixedDelayString = "${analyzer.scenario-state.evaluation-idle-timeout:1h}"
+    )
+    public void evictEvaluations() {
+        long idleSince = System.currentTimeMillis() - scenarioStateProperties.getEvaluationIdleTimeout().toMillis();
+        int before = evaluations.size();
+        for (String hubId : evaluations.keySet()) {
+            evaluations.computeIfPresent(hubId, (id, evaluation) ->
+                    evaluation.getLastUsed() < idleSince || !evaluation.isFor(scenarioIndex.scenarios(id))
+                            ? null
+                            : evaluation);
         }
-
-        Integer expectedValue = condition.getValue();
-        ConditionOperation operation = condition.getOperation();
-
-        if (sensorValue instanceof Integer intValue) {
-            return switch (operation) {
-                case EQUALS -> intValue.equals(expectedValue);
-                case GREATER_THAN -> intValue > expectedValue;
-                case LOWER_THAN -> intValue < expectedValue;
-            };
-        } else if (sensorValue instanceof Boolean boolValue) {
-            boolean expected = expectedValue == 1;
-            return switch (operation) {
-                case EQUALS -> boolValue == expected;
-                default -> false;
-            };
-        }
-
-        return false;
-    }
-
-    /**
-     * Извлекает значение датчика в зависимости от типа условия.
-     */
-    private Object extractSensorValue(ConditionType type, SensorStateAvro state) {
-        Object data = state.getData();
-
-        return switch (type) {
-            case MOTION -> data instanceof MotionSensorAvro motion ? motion.getMotion() : null;
-            case LUMINOSITY -> data instanceof LightSensorAvro light ? light.getLuminosity() : null;
-            case SWITCH -> data instanceof SwitchSensorAvro switchSensor ? switchSensor.getState() : null;
-            case TEMPERATURE -> {
-                if (data instanceof TemperatureSensorAvro temp) {
-                    yield temp.getTemperatureC();
-                } else if (data instanceof ClimateSensorAvro climate) {
-                    yield climate.getTemperatureC();
-                }
-                yield null;
-            }
-            case CO2LEVEL -> data instanceof ClimateSensorAvro climate ? climate.getCo2Level() : null;
-            case HUMIDITY -> data instanceof ClimateSensorAvro climate ? climate.getHumidity() : null;
-        };
+        log.debug("Evicted {} hub evaluations, {} left", before - evaluations.size(), evaluations.size());
     }
 
     /**
-     * Выполняет действия сценария.
+     * Передает действия сценария на асинхронную отправку в Hub Router.
      */
-    private void executeScenarioActions(Scenario scenario, SensorsSnapshotAvro snapshot) {
-        for (ScenarioAction scenarioAction : scenario.getActions()) {
-            Action action = scenarioAction.getAction();
-            String sensorId = scenarioAction.getSensor().getId();
-
-            try {
-                DeviceActionProto actionProto = DeviceActionProto.newBuilder()
-                        .setSensorId(sensorId)
-                        .setType(ActionTypeProto.valueOf(action.getType().name()))
-                        .setValue(action.getValue() != null ? action.getValue() : 0)
-                        .build();
-
-                DeviceActionRequest request = DeviceActionRequest.newBuilder()
-                        .setHubId(snapshot.getHubId())
-                        .setScenarioName(scenario.getName())
-                        .setAction(actionProto)
-                        .setTimestamp(Timestamp.newBuilder()
-                                .setSeconds(snapshot.getTimestamp().getEpochSecond())
-                                .setNanos(snapshot.getTimestamp().getNano())
-                                .build())
-                        .build();
-
-                var response = hubRouterClient.handleDeviceAction(request);
-                log.info("Executed action {} on sensor {} for scenario {}: {}",
-                        action.getType(), sensorId, scenario.getName(), response);
-            } catch (Exception e) {
-                log.error("Error executing action for scenario {}", scenario.getName(), e);
-            }
+    private void executeScenarioActions(CompiledScenario scenario, SensorsSnapshotAvro snapshot) {
+        Timestamp timestamp = Timestamp.newBuilder()
+                .setSeconds(snapshot.getTimestamp().getEpochSecond())
+                .setNanos(snapshot.getTimestamp().getNano())
+                .build();
+
+        for (CompiledAction action : scenario.actions()) {
+            actionDispatcher.dispatch(DeviceActionRequest.newBuilder()
+                    .setHubId(snapshot.getHubId())
+                    .setScenarioName(scenario.name())
+                    .setAction(action.action())
+                    .setTimestamp(timestamp)
+                    .build());
         }
     }
-}
\ No newline at end of file
+}
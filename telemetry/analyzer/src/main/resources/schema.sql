@@ -66,4 +66,20 @@ EXECUTE FUNCTION check_hub_id();
 CREATE OR REPLACE TRIGGER tr_bi_scenario_actions_hub_id_check
 BEFORE INSERT ON scenario_actions
 FOR EACH ROW
-EXECUTE FUNCTION check_hub_id();
\ No newline at end of file
+EXECUTE FUNCTION check_hub_id();
+
+-- создаём таблицу scenario_states с контрольной точкой состояния срабатывания сценариев
+CREATE TABLE IF NOT EXISTS scenario_states (
+    scenario_id BIGINT PRIMARY KEY REFERENCES scenarios(id) ON DELETE CASCADE,
+    active BOOLEAN NOT NULL,
+    last_fired TIMESTAMP WITH TIME ZONE
+);
+
+-- создаём таблицу hub_scenario_versions с номером последнего изменения сценариев хаба
+CREATE TABLE IF NOT EXISTS hub_scenario_versions (
+    hub_id VARCHAR PRIMARY KEY,
+    version BIGINT NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_hub_scenario_versions_updated_at ON hub_scenario_versions (updated_at);
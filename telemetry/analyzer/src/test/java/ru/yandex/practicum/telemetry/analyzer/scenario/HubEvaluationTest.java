@@ -0,0 +1,84 @@
+package ru.yandex.practicum.telemetry.analyzer.scenario;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionOperation;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionType;
+import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioStateRepository;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class HubEvaluationTest {
+
+    private static final long SCENARIO_ID = 7;
+    private static final long COOLDOWN = 1_000;
+
+    private final CompiledScenario scenario = new CompiledScenario(SCENARIO_ID, "lights", List.of(
+            CompiledCondition.of("switch-1", ConditionType.SWITCH, ConditionOperation.EQUALS, 1),
+            CompiledCondition.of("switch-2", ConditionType.SWITCH, ConditionOperation.EQUALS, 1)
+    ), List.of());
+    private final HubScenarios scenarios = new HubScenarios(List.of(scenario));
+    private final ScenarioStateStore stateStore = new ScenarioStateStore(
+            mock(ScenarioStateRepository.class), mock(PlatformTransactionManager.class));
+    private final Map<String, SensorStateAvro> states = new HashMap<>();
+
+    @Test
+    void firesOnlyWhenConditionsBecomeSatisfied() {
+        HubEvaluation evaluation = new HubEvaluation(scenarios, stateStore, COOLDOWN);
+
+        set("switch-1", true);
+        assertEquals(List.of(), evaluation.evaluate(0, states, null));
+
+        set("switch-2", true);
+        assertEquals(List.of(scenario), evaluation.evaluate(10_000, states, List.of("switch-2")));
+        assertEquals(List.of(), evaluation.evaluate(20_000, states, List.of("switch-1", "switch-2")));
+        assertEquals(new ScenarioFiring(true, 10_000), stateStore.get(SCENARIO_ID));
+
+        set("switch-1", false);
+        assertEquals(List.of(), evaluation.evaluate(30_000, states, List.of("switch-1")));
+        set("switch-1", true);
+        assertEquals(List.of(scenario), evaluation.evaluate(40_000, states, List.of("switch-1")));
+    }
+
+    @Test
+    void skipsActionsDuringCooldown() {
+        HubEvaluation evaluation = new HubEvaluation(scenarios, stateStore, COOLDOWN);
+        set("switch-1", true);
+        set("switch-2", true);
+        assertEquals(List.of(scenario), evaluation.evaluate(10_000, states, null));
+
+        set("switch-2", false);
+        evaluation.evaluate(10_100, states, List.of("switch-2"));
+        set("switch-2", true);
+        assertEquals(List.of(), evaluation.evaluate(10_200, states, List.of("switch-2")));
+        assertEquals(new ScenarioFiring(true, 10_000), stateStore.get(SCENARIO_ID));
+
+        set("switch-2", false);
+        evaluation.evaluate(11_000, states, List.of("switch-2"));
+        set("switch-2", true);
+        assertEquals(List.of(scenario), evaluation.evaluate(11_100, states, List.of("switch-2")));
+    }
+
+    @Test
+    void restoredActiveStateSuppressesRefire() {
+        stateStore.update(SCENARIO_ID, new ScenarioFiring(true, 5_000));
+        HubEvaluation evaluation = new HubEvaluation(scenarios, stateStore, COOLDOWN);
+
+        set("switch-1", true);
+        set("switch-2", true);
+        assertEquals(List.of(), evaluation.evaluate(10_000, states, null));
+        assertEquals(new ScenarioFiring(true, 5_000), stateStore.get(SCENARIO_ID));
+    }
+
+    private void set(String sensorId, boolean on) {
+        states.put(sensorId, new SensorStateAvro(Instant.EPOCH, new SwitchSensorAvro(on)));
+    }
+}
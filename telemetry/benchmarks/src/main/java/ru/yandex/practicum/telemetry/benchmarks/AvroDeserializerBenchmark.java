@@ -0,0 +1,71 @@
+package ru.yandex.practicum.telemetry.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.kafka.telemetry.deserializer.SensorEventDeserializer;
+import ru.yandex.practicum.kafka.telemetry.deserializer.SnapshotDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Десериализация событий датчиков и снапшотов разного размера через BaseAvroDeserializer,
+ * с заголовком single-object encoding и без него.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvroDeserializerBenchmark {
+
+    /**
+     * Количество датчиков хаба и, соответственно, размер снапшота.
+     */
+    @Param({"1", "10", "100", "500"})
+    public int sensors;
+
+    /**
+     * Записи с заголовком, содержащим отпечаток схемы.
+     */
+    @Param({"false", "true"})
+    public boolean singleObjectEncoding;
+
+    private final SensorEventDeserializer eventDeserializer = new SensorEventDeserializer();
+    private final SnapshotDeserializer snapshotDeserializer = new SnapshotDeserializer();
+
+    private byte[][] events;
+    private byte[] snapshot;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        AvroSerializer<SensorEventAvro> eventSerializer = new AvroSerializer<>();
+        AvroSerializer<SensorsSnapshotAvro> snapshotSerializer = new AvroSerializer<>();
+        Map<String, ?> configs = Map.of(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG, singleObjectEncoding);
+        eventSerializer.configure(configs, false);
+        snapshotSerializer.configure(configs, false);
+
+        SensorEventAvro[] avroEvents = TelemetryFixtures.toAvro(TelemetryFixtures.sensorEvents("hub-1", sensors, 42));
+        events = new byte[avroEvents.length][];
+        for (int i = 0; i < avroEvents.length; i++) {
+            events[i] = eventSerializer.serialize("telemetry.sensors.v1", avroEvents[i]);
+        }
+        snapshot = snapshotSerializer.serialize("telemetry.snapshots.v1",
+                TelemetryFixtures.snapshot("hub-1", sensors, 42));
+    }
+
+    @Benchmark
+    public SensorEventAvro deserializeSensorEvent() {
+        index = (index + 1) & (TelemetryFixtures.EVENT_COUNT - 1);
+        return eventDeserializer.deserialize("telemetry.sensors.v1", events[index]);
+    }
+
+    @Benchmark
+    public SensorsSnapshotAvro deserializeSnapshot() {
+        return snapshotDeserializer.deserialize("telemetry.snapshots.v1", snapshot);
+    }
+}
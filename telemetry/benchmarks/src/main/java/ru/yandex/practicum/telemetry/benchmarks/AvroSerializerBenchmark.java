@@ -0,0 +1,61 @@
+package ru.yandex.practicum.telemetry.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация событий датчиков и снапшотов разного размера через AvroSerializer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvroSerializerBenchmark {
+
+    /**
+     * Количество датчиков хаба и, соответственно, размер снапшота.
+     */
+    @Param({"1", "10", "100", "500"})
+    public int sensors;
+
+    /**
+     * Подстройка буфера под гистограмму размеров записей.
+     */
+    @Param({"false", "true"})
+    public boolean adaptiveBuffer;
+
+    private final AvroSerializer<SensorEventAvro> eventSerializer = new AvroSerializer<>();
+    private final AvroSerializer<SensorsSnapshotAvro> snapshotSerializer = new AvroSerializer<>();
+
+    private SensorEventAvro[] events;
+    private SensorsSnapshotAvro snapshot;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        Map<String, ?> configs = Map.of(AvroSerializer.ADAPTIVE_BUFFER_CONFIG, adaptiveBuffer);
+        eventSerializer.configure(configs, false);
+        snapshotSerializer.configure(configs, false);
+
+        events = TelemetryFixtures.toAvro(TelemetryFixtures.sensorEvents("hub-1", sensors, 42));
+        snapshot = TelemetryFixtures.snapshot("hub-1", sensors, 42);
+    }
+
+    @Benchmark
+    public byte[] serializeSensorEvent() {
+        index = (index + 1) & (TelemetryFixtures.EVENT_COUNT - 1);
+        return eventSerializer.serialize("telemetry.sensors.v1", events[index]);
+    }
+
+    @Benchmark
+    public byte[] serializeSnapshot() {
+        return snapshotSerializer.serialize("telemetry.snapshots.v1", snapshot);
+    }
+}
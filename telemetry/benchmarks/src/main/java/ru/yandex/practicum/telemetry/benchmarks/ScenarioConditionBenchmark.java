@@ -0,0 +1,173 @@
+package ru.yandex.practicum.telemetry.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionOperation;
+import ru.yandex.practicum.telemetry.analyzer.model.ConditionType;
+import ru.yandex.practicum.telemetry.analyzer.scenario.CompiledCondition;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка условий сценариев: скомпилированные проверки против прежней интерпретации,
+ * которая упаковывает показание в {@code Object} и разбирает тип и операцию условия при каждой проверке.
+ * <p>
+ * Условия случайных типов и операций проверяются по состояниям подходящих датчиков,
+ * так что выполняется и путь совпадения, и путь несовпадения. Показания и пороги берутся
+ * из правдоподобных диапазонов (CO2 в ppm, освещенность в люксах), поэтому прежняя интерпретация
+ * не всегда попадает в кэш {@link Integer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScenarioConditionBenchmark {
+
+    /**
+     * Количество проверяемых условий.
+     */
+    @Param({"16", "256"})
+    public int conditions;
+
+    private CompiledCondition[] compiled;
+    private SensorStateAvro[] states;
+
+    @Setup
+    public void setUp() {
+        compiled = new CompiledCondition[conditions];
+        states = new SensorStateAvro[conditions];
+
+        Random random = new Random(42);
+        ConditionType[] types = ConditionType.values();
+        ConditionOperation[] operations = ConditionOperation.values();
+        for (int i = 0; i < conditions; i++) {
+            ConditionType type = types[random.nextInt(types.length)];
+            ConditionOperation operation = operations[random.nextInt(operations.length)];
+            compiled[i] = CompiledCondition.of("sensor-" + i, type, operation, threshold(type, random));
+            states[i] = SensorStateAvro.newBuilder()
+                    .setTimestamp(Instant.ofEpochSecond(TelemetryFixtures.BASE_EPOCH_SECOND))
+                    .setData(payload(type, i, random))
+                    .build();
+
+            CompiledCondition condition = compiled[i];
+            if (condition.test(states[i]) != interpret(type, operation, condition.value(), states[i])) {
+                throw new IllegalStateException("Compiled condition disagrees with interpretation: " + condition);
+            }
+        }
+    }
+
+    @Benchmark
+    public int compiled() {
+        int satisfied = 0;
+        for (int i = 0; i < conditions; i++) {
+            if (compiled[i].test(states[i])) {
+                satisfied++;
+            }
+        }
+        return satisfied;
+    }
+
+    @Benchmark
+    public int interpreted() {
+        int satisfied = 0;
+        for (int i = 0; i < conditions; i++) {
+            CompiledCondition condition = compiled[i];
+            if (interpret(condition.type(), condition.operation(), condition.value(), states[i])) {
+                satisfied++;
+            }
+        }
+        return satisfied;
+    }
+
+    private static int threshold(ConditionType type, Random random) {
+        return switch (type) {
+            case MOTION, SWITCH -> random.nextInt(2);
+            case LUMINOSITY -> random.nextInt(1000);
+            case TEMPERATURE -> temperature(random);
+            case CO2LEVEL -> co2Level(random);
+            case HUMIDITY -> random.nextInt(100);
+        };
+    }
+
+    private static Object payload(ConditionType type, int sensor, Random random) {
+        return switch (type) {
+            case MOTION -> new MotionSensorAvro(random.nextInt(100), random.nextBoolean(), random.nextInt(100));
+            case LUMINOSITY -> new LightSensorAvro(random.nextInt(100), random.nextInt(1000));
+            case SWITCH -> new SwitchSensorAvro(random.nextBoolean());
+            case TEMPERATURE -> random.nextBoolean()
+                    ? new TemperatureSensorAvro("sensor-" + sensor, "hub-1",
+                    Instant.ofEpochSecond(TelemetryFixtures.BASE_EPOCH_SECOND), temperature(random), 0)
+                    : climate(random);
+            case CO2LEVEL, HUMIDITY -> climate(random);
+        };
+    }
+
+    private static ClimateSensorAvro climate(Random random) {
+        return new ClimateSensorAvro(temperature(random), random.nextInt(100), co2Level(random));
+    }
+
+    private static int temperature(Random random) {
+        return random.nextInt(60) - 20;
+    }
+
+    private static int co2Level(Random random) {
+        return 400 + random.nextInt(1600);
+    }
+
+    /**
+     * Проверка условия в том виде, в каком она выполнялась до компиляции условий.
+     */
+    private static boolean interpret(ConditionType type, ConditionOperation operation, Integer value,
+                                     SensorStateAvro state) {
+        Object sensorValue = extractSensorValue(type, state);
+
+        if (sensorValue == null || value == null) {
+            return false;
+        }
+
+        if (sensorValue instanceof Integer intValue) {
+            return switch (operation) {
+                case EQUALS -> intValue.equals(value);
+                case GREATER_THAN -> intValue > value;
+                case LOWER_THAN -> intValue < value;
+            };
+        } else if (sensorValue instanceof Boolean boolValue) {
+            boolean expected = value == 1;
+            return switch (operation) {
+                case EQUALS -> boolValue == expected;
+                default -> false;
+            };
+        }
+
+        return false;
+    }
+
+    private static Object extractSensorValue(ConditionType type, SensorStateAvro state) {
+        Object data = state.getData();
+
+        return switch (type) {
+            case MOTION -> data instanceof MotionSensorAvro motion ? motion.getMotion() : null;
+            case LUMINOSITY -> data instanceof LightSensorAvro light ? light.getLuminosity() : null;
+            case SWITCH -> data instanceof SwitchSensorAvro switchSensor ? switchSensor.getState() : null;
+            case TEMPERATURE -> {
+                if (data instanceof TemperatureSensorAvro temp) {
+                    yield temp.getTemperatureC();
+                } else if (data instanceof ClimateSensorAvro climate) {
+                    yield climate.getTemperatureC();
+                }
+                yield null;
+            }
+            case CO2LEVEL -> data instanceof ClimateSensorAvro climate ? climate.getCo2Level() : null;
+            case HUMIDITY -> data instanceof ClimateSensorAvro climate ? climate.getHumidity() : null;
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.telemetry.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
+import ru.yandex.practicum.telemetry.collector.mapper.SensorEventAvroEncoder;
+import ru.yandex.practicum.telemetry.collector.mapper.SensorEventMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование событий датчиков в Collector: маппер proto -> Avro,
+ * маппер вместе с AvroSerializer и прямое кодирование в байты Avro.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorEventMapperBenchmark {
+
+    private final SensorEventMapper mapper = new SensorEventMapper();
+    private final SensorEventAvroEncoder encoder = new SensorEventAvroEncoder(new KafkaConfigurationProperties());
+    private final AvroSerializer<SensorEventAvro> serializer = new AvroSerializer<>();
+
+    private SensorEventProto[] events;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        events = TelemetryFixtures.sensorEvents("hub-1", 100, 42);
+    }
+
+    @Benchmark
+    public SensorEventAvro mapToAvro() {
+        return mapper.mapToAvro(next());
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() {
+        return serializer.serialize("telemetry.sensors.v1", mapper.mapToAvro(next()));
+    }
+
+    @Benchmark
+    public byte[] encodeDirect() {
+        return encoder.encode(next());
+    }
+
+    private SensorEventProto next() {
+        index = (index + 1) & (TelemetryFixtures.EVENT_COUNT - 1);
+        return events[index];
+    }
+}
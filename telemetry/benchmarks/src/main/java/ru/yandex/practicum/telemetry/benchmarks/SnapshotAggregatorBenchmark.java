@@ -0,0 +1,90 @@
+package ru.yandex.practicum.telemetry.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.mapper.SensorEventProtoMapper;
+import ru.yandex.practicum.telemetry.aggregator.service.HubState;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotAggregator;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обновление снапшота хаба с заданным количеством датчиков в состоянии одной партиции.
+ * <p>
+ * Каждое событие получает метку времени новее предыдущей, иначе агрегатор отбросил бы его
+ * как устаревшее. Для changed показания датчика чередуются между двумя вариантами,
+ * для unchanged повторяются - так измеряется и путь публикации, и путь отбрасывания дубликата.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotAggregatorBenchmark {
+
+    private static final String HUB_ID = "hub-1";
+
+    /**
+     * Количество датчиков хаба.
+     */
+    @Param({"1", "10", "100", "500"})
+    public int sensors;
+
+    private SnapshotAggregator aggregator;
+
+    /**
+     * Два варианта показаний для каждого датчика.
+     */
+    private SensorEventAvro[][] variants;
+
+    /**
+     * Вариант показаний, записанный в снапшот для каждого датчика.
+     */
+    private int[] current;
+    private long tick;
+
+    @Setup
+    public void setUp() {
+        aggregator = new SnapshotAggregator();
+        variants = new SensorEventAvro[sensors][2];
+        current = new int[sensors];
+
+        Random random = new Random(42);
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            for (int variant = 0; variant < 2; variant++) {
+                SensorEventAvro event;
+                do {
+                    SensorEventProto proto = TelemetryFixtures.sensorEvent(
+                            HUB_ID, sensor, TelemetryFixtures.BASE_EPOCH_SECOND, random);
+                    event = SensorEventProtoMapper.toAvro(proto);
+                } while (variant == 1 && event.getPayload().equals(variants[sensor][0].getPayload()));
+                variants[sensor][variant] = event;
+            }
+            aggregator.update(variants[sensor][0]);
+        }
+    }
+
+    @Benchmark
+    public HubState updateChanged() {
+        long step = ++tick;
+        int sensor = (int) (step % sensors);
+        current[sensor] ^= 1;
+        return aggregator.update(withTimestamp(variants[sensor][current[sensor]], step));
+    }
+
+    @Benchmark
+    public HubState updateUnchanged() {
+        long step = ++tick;
+        int sensor = (int) (step % sensors);
+        return aggregator.update(withTimestamp(variants[sensor][0], step));
+    }
+
+    private static SensorEventAvro withTimestamp(SensorEventAvro event, long step) {
+        event.setTimestamp(Instant.ofEpochSecond(TelemetryFixtures.BASE_EPOCH_SECOND, 0).plusMillis(step));
+        return event;
+    }
+}
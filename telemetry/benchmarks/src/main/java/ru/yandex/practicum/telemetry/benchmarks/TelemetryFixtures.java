@@ -0,0 +1,136 @@
+package ru.yandex.practicum.telemetry.benchmarks;
+
+import com.google.protobuf.Timestamp;
+import ru.yandex.practicum.grpc.telemetry.event.*;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.mapper.SensorEventProtoMapper;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Тестовые данные для бенчмарков.
+ * <p>
+ * Тип датчика определяется его номером, поэтому датчик всегда присылает события одного типа.
+ * Доли типов приближены к реальному потоку: больше всего событий от датчиков движения
+ * и температуры, меньше всего - от переключателей.
+ */
+public final class TelemetryFixtures {
+
+    /**
+     * Количество событий в циклически перебираемом наборе.
+     */
+    public static final int EVENT_COUNT = 1024;
+
+    public static final long BASE_EPOCH_SECOND = 1_700_000_000L;
+
+    // Доли типов датчиков в процентах: движение, температура, климат, освещенность, переключатель
+    private static final int[] TYPE_WEIGHTS = {30, 25, 20, 15, 10};
+
+    private TelemetryFixtures() {
+    }
+
+    /**
+     * Набор событий датчиков одного хаба со смешанными типами.
+     *
+     * @param sensors количество датчиков хаба
+     * @param seed    зерно генератора показаний
+     */
+    public static SensorEventProto[] sensorEvents(String hubId, int sensors, long seed) {
+        Random random = new Random(seed);
+        SensorEventProto[] events = new SensorEventProto[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            events[i] = sensorEvent(hubId, i % sensors, BASE_EPOCH_SECOND + i, random);
+        }
+        return events;
+    }
+
+    /**
+     * Те же события в Avro-представлении.
+     */
+    public static SensorEventAvro[] toAvro(SensorEventProto[] events) {
+        SensorEventAvro[] result = new SensorEventAvro[events.length];
+        for (int i = 0; i < events.length; i++) {
+            result[i] = SensorEventProtoMapper.toAvro(events[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Снапшот хаба с заданным количеством датчиков.
+     */
+    public static SensorsSnapshotAvro snapshot(String hubId, int sensors, long seed) {
+        Random random = new Random(seed);
+        Map<String, SensorStateAvro> states = new HashMap<>();
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            SensorEventAvro event = SensorEventProtoMapper.toAvro(
+                    sensorEvent(hubId, sensor, BASE_EPOCH_SECOND + sensor, random));
+            states.put(event.getId(), SensorStateAvro.newBuilder()
+                    .setTimestamp(event.getTimestamp())
+                    .setData(event.getPayload())
+                    .build());
+        }
+        return SensorsSnapshotAvro.newBuilder()
+                .setHubId(hubId)
+                .setTimestamp(Instant.ofEpochSecond(BASE_EPOCH_SECOND + sensors))
+                .setSensorsState(states)
+                .build();
+    }
+
+    /**
+     * Событие датчика с номером sensor; тип определяется номером, показания - генератором.
+     */
+    public static SensorEventProto sensorEvent(String hubId, int sensor, long epochSecond, Random random) {
+        SensorEventProto.Builder builder = SensorEventProto.newBuilder()
+                .setId(sensorId(sensor))
+                .setHubId(hubId)
+                .setTimestamp(Timestamp.newBuilder()
+                        .setSeconds(epochSecond)
+                        .setNanos(random.nextInt(1_000) * 1_000_000));
+
+        switch (sensorType(sensor)) {
+            case 0 -> builder.setMotionSensor(MotionSensorProto.newBuilder()
+                    .setLinkQuality(50 + random.nextInt(50))
+                    .setMotion(random.nextBoolean())
+                    .setVoltage(220 + random.nextInt(10)));
+            case 1 -> {
+                int celsius = 15 + random.nextInt(15);
+                builder.setTemperatureSensor(TemperatureSensorProto.newBuilder()
+                        .setTemperatureC(celsius)
+                        .setTemperatureF(celsius * 9 / 5 + 32));
+            }
+            case 2 -> builder.setClimateSensor(ClimateSensorProto.newBuilder()
+                    .setTemperatureC(15 + random.nextInt(15))
+                    .setHumidity(30 + random.nextInt(40))
+                    .setCo2Level(400 + random.nextInt(1_000)));
+            case 3 -> builder.setLightSensor(LightSensorProto.newBuilder()
+                    .setLinkQuality(50 + random.nextInt(50))
+                    .setLuminosity(random.nextInt(1_000)));
+            default -> builder.setSwitchSensor(SwitchSensorProto.newBuilder()
+                    .setState(random.nextBoolean()));
+        }
+        return builder.build();
+    }
+
+    public static String sensorId(int sensor) {
+        return "sensor-" + sensor;
+    }
+
+    /**
+     * Тип датчика по его номеру с учетом долей {@link #TYPE_WEIGHTS}.
+     */
+    private static int sensorType(int sensor) {
+        int bucket = Math.floorMod(sensor * 37, 100);
+        for (int type = 0; type < TYPE_WEIGHTS.length; type++) {
+            bucket -= TYPE_WEIGHTS[type];
+            if (bucket < 0) {
+                return type;
+            }
+        }
+        return TYPE_WEIGHTS.length - 1;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.telemetry.collector.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Настройки потоковых gRPC-вызовов сервиса Collector.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.grpc.stream")
+public class GrpcStreamProperties {
+
+    /**
+     * Максимальное число пакетов одного потока, ожидающих подтверждения от Kafka.
+     * Следующий пакет запрашивается у клиента только при наличии свободного места.
+     */
+    private int maxInFlightBatches = 8;
+}
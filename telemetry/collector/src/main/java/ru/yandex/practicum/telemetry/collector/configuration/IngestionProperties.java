@@ -0,0 +1,51 @@
+package ru.yandex.practicum.telemetry.collector.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Ограничения на объем событий, принятых сервисом Collector, но еще не записанных в Kafka.
+ * <p>
+ * Глобальный лимит по байтам должен быть меньше buffer.memory продюсера, тогда send()
+ * не блокируется на заполненном буфере, а лишние запросы отклоняются сразу.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.ingestion")
+public class IngestionProperties {
+
+    /**
+     * Включает контроль допуска событий.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Максимальное число событий в обработке на весь сервис.
+     */
+    private long maxInFlightEvents = 50_000;
+
+    /**
+     * Максимальный объем событий в обработке на весь сервис, в байтах.
+     */
+    private long maxInFlightBytes = 16 * 1024 * 1024;
+
+    /**
+     * Максимальное число событий в обработке для одного хаба.
+     */
+    private long maxInFlightEventsPerHub = 5_000;
+
+    /**
+     * Максимальный объем событий в обработке для одного хаба, в байтах.
+     */
+    private long maxInFlightBytesPerHub = 2 * 1024 * 1024;
+
+    /**
+     * Рекомендуемая клиенту задержка перед повтором отклоненного запроса.
+     */
+    private Duration retryAfter = Duration.ofMillis(200);
+}
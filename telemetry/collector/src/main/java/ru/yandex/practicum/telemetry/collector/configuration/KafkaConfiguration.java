@@ -2,6 +2,7 @@ package ru.yandex.practicum.telemetry.collector.configuration;
 
 import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -25,15 +26,14 @@ import java.util.Map;
 public class KafkaConfiguration {
 
     private final KafkaProperties kafkaProperties;
+    private final KafkaConfigurationProperties kafkaConfig;
 
     /**
      * Создает ProducerFactory для событий датчиков с Avro сериализацией.
      */
     @Bean
     public ProducerFactory<String, SensorEventAvro> sensorEventProducerFactory() {
-        Map<String, Object> props = new HashMap<>(kafkaProperties.buildProducerProperties(null));
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, AvroSerializer.class.getName());
-        return new DefaultKafkaProducerFactory<>(props);
+        return new DefaultKafkaProducerFactory<>(avroProducerProperties());
     }
 
     /**
@@ -49,9 +49,7 @@ public class KafkaConfiguration {
      */
     @Bean
     public ProducerFactory<String, HubEventAvro> hubEventProducerFactory() {
-        Map<String, Object> props = new HashMap<>(kafkaProperties.buildProducerProperties(null));
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, AvroSerializer.class.getName());
-        return new DefaultKafkaProducerFactory<>(props);
+        return new DefaultKafkaProducerFactory<>(avroProducerProperties());
     }
 
     /**
@@ -61,4 +59,33 @@ public class KafkaConfiguration {
     public KafkaTemplate<String, HubEventAvro> hubEventKafkaTemplate() {
         return new KafkaTemplate<>(hubEventProducerFactory());
     }
+
+    /**
+     * Создает ProducerFactory для событий, уже закодированных в формат топика.
+     */
+    @Bean
+    public ProducerFactory<String, byte[]> encodedEventProducerFactory() {
+        Map<String, Object> props = avroProducerProperties();
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        return new DefaultKafkaProducerFactory<>(props);
+    }
+
+    /**
+     * Создает KafkaTemplate для отправки закодированных событий датчиков и хабов.
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> encodedEventKafkaTemplate() {
+        return new KafkaTemplate<>(encodedEventProducerFactory());
+    }
+
+    /**
+     * Собирает свойства продюсера: базовые из spring.kafka.producer,
+     * поверх них - настройки пакетной отправки из collector.kafka.producer.properties.
+     */
+    private Map<String, Object> avroProducerProperties() {
+        Map<String, Object> props = new HashMap<>(kafkaProperties.buildProducerProperties(null));
+        props.putAll(kafkaConfig.getProducer().getProperties());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, AvroSerializer.class.getName());
+        return props;
+    }
 }
\ No newline at end of file
@@ -4,7 +4,9 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.serialization.WireFormat;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,6 +22,39 @@ public class KafkaConfigurationProperties {
     @Getter
     @Setter
     public static class Producer {
+        /**
+         * Дополнительные свойства продюсера (linger.ms, batch.size, compression.type и т.д.),
+         * переопределяющие значения из spring.kafka.producer.
+         */
         private Map<String, String> properties = new HashMap<>();
+
+        /**
+         * Отвечать клиенту только после подтверждения записи брокером.
+         * Если false, ответ отправляется сразу после передачи события продюсеру.
+         */
+        private boolean awaitDelivery = true;
+
+        /**
+         * Формат записей в топиках событий. PROTOBUF передает в Kafka байты gRPC-сообщения
+         * без преобразования в Avro; потребители поддерживают оба формата.
+         */
+        private WireFormat wireFormat = WireFormat.AVRO;
+
+        /**
+         * Кодировать proto-события сразу в бинарный Avro, минуя Avro-объекты и AvroSerializer.
+         * Действует для формата AVRO.
+         */
+        private boolean directEncoding = true;
+
+        /**
+         * Сколько при старте ждать метаданных топиков событий, прежде чем начать
+         * принимать события без них. 0 - не загружать метаданные заранее.
+         */
+        private Duration metadataWarmUpTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Пауза между попытками загрузить метаданные топиков при старте.
+         */
+        private Duration metadataWarmUpBackoff = Duration.ofMillis(500);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.telemetry.collector.controller;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.Duration;
+import com.google.rpc.Code;
+import com.google.rpc.RetryInfo;
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.StatusProto;
+import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.RetriableException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Преобразует ошибки обработки и отправки событий в gRPC-статусы.
+ * <p>
+ * Клиент по статусу решает, повторять ли запрос: UNAVAILABLE и RESOURCE_EXHAUSTED
+ * означают временную проблему на стороне Kafka, INVALID_ARGUMENT - ошибку в самом событии.
+ */
+public final class DeliveryStatusMapper {
+
+    private DeliveryStatusMapper() {
+    }
+
+    /**
+     * Создает исключение с gRPC-статусом, соответствующим причине ошибки.
+     * Если причина уже несет gRPC-статус, она возвращается вместе с трейлерами
+     * (например, RetryInfo из {@link #overloaded}), а не пересобирается.
+     */
+    public static StatusRuntimeException toStatusException(Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof StatusRuntimeException statusException) {
+            return statusException;
+        }
+        if (cause instanceof StatusException statusException) {
+            return new StatusRuntimeException(statusException.getStatus(), statusException.getTrailers());
+        }
+        return toStatus(cause)
+                .withDescription(cause.getLocalizedMessage())
+                .withCause(cause)
+                .asRuntimeException();
+    }
+
+    /**
+     * Создает исключение RESOURCE_EXHAUSTED для запроса, отклоненного контролем допуска.
+     * Рекомендуемая задержка перед повтором передается в деталях статуса как google.rpc.RetryInfo.
+     */
+    public static StatusRuntimeException overloaded(String hubId, long retryAfterMillis) {
+        RetryInfo retryInfo = RetryInfo.newBuilder()
+                .setRetryDelay(Duration.newBuilder()
+                        .setSeconds(retryAfterMillis / 1000)
+                        .setNanos((int) (retryAfterMillis % 1000) * 1_000_000))
+                .build();
+
+        return StatusProto.toStatusRuntimeException(com.google.rpc.Status.newBuilder()
+                .setCode(Code.RESOURCE_EXHAUSTED_VALUE)
+                .setMessage("Too many in-flight events for hub " + hubId + ", retry after " + retryAfterMillis + " ms")
+                .addDetails(Any.pack(retryInfo))
+                .build());
+    }
+
+    private static Status toStatus(Throwable cause) {
+        // Буфер продюсера переполнен - брокер не успевает принимать записи
+        if (cause instanceof BufferExhaustedException) {
+            return Status.RESOURCE_EXHAUSTED;
+        }
+        if (cause instanceof RetriableException) {
+            return Status.UNAVAILABLE;
+        }
+        if (cause instanceof RecordTooLargeException || cause instanceof IllegalArgumentException) {
+            return Status.INVALID_ARGUMENT;
+        }
+        return Status.INTERNAL;
+    }
+
+    /**
+     * Снимает обертки CompletableFuture и Spring Kafka, чтобы добраться до исходной причины.
+     */
+    private static Throwable unwrap(Throwable throwable) {
+        Throwable current = throwable;
+        while (current.getCause() != null
+                && (current instanceof CompletionException
+                || current instanceof ExecutionException
+                || current instanceof org.springframework.kafka.KafkaException)) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
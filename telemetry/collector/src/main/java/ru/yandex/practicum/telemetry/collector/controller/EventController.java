@@ -1,23 +1,40 @@
 package ru.yandex.practicum.telemetry.collector.controller;
 
 import com.google.protobuf.Empty;
-import io.grpc.Status;
-import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
 import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchAckProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchProto;
 import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.grpc.telemetry.service.CollectorControllerGrpc;
-import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
-import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.ProtobufEncoding;
+import ru.yandex.practicum.kafka.telemetry.serialization.WireFormat;
+import ru.yandex.practicum.telemetry.collector.configuration.GrpcStreamProperties;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
+import ru.yandex.practicum.telemetry.collector.mapper.HubEventAvroEncoder;
 import ru.yandex.practicum.telemetry.collector.mapper.HubEventMapper;
+import ru.yandex.practicum.telemetry.collector.mapper.SensorEventAvroEncoder;
 import ru.yandex.practicum.telemetry.collector.mapper.SensorEventMapper;
+import ru.yandex.practicum.telemetry.collector.service.IngestionLimiter;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * gRPC контроллер для сбора событий от датчиков и хабов.
+ * <p>
+ * Ни один из методов не блокирует поток gRPC: ответ отправляется из callback'а
+ * отправки в Kafka, ошибки доставки переводятся в статусы через {@link DeliveryStatusMapper}.
+ * Перед отправкой событие проходит контроль допуска {@link IngestionLimiter}; место в бюджете
+ * освобождается, когда Kafka подтвердила или отклонила запись.
+ * <p>
+ * При включенном прямом кодировании событие переводится из proto сразу в байты Avro
+ * кодировщиками {@link SensorEventAvroEncoder} и {@link HubEventAvroEncoder}; маппер
+ * используется при выключенной опции. В формате PROTOBUF в Kafka передается
+ * само proto-сообщение с заголовком формата.
  */
 @Slf4j
 @GrpcService
@@ -26,34 +43,41 @@ public class EventController extends CollectorControllerGrpc.CollectorController
 
     private final SensorEventMapper sensorEventMapper;
     private final HubEventMapper hubEventMapper;
+    private final SensorEventAvroEncoder sensorEventAvroEncoder;
+    private final HubEventAvroEncoder hubEventAvroEncoder;
     private final KafkaEventProducer kafkaEventProducer;
+    private final KafkaConfigurationProperties kafkaConfig;
+    private final GrpcStreamProperties streamProperties;
+    private final IngestionLimiter ingestionLimiter;
 
     /**
      * Обрабатывает событие от датчика.
      */
     @Override
     public void collectSensorEvent(SensorEventProto request, StreamObserver<Empty> responseObserver) {
+        IngestionLimiter.Permit permit = null;
         try {
-            log.info("Received sensor event: type={}, id={}, hubId={}",
+            log.debug("Received sensor event: type={}, id={}, hubId={}",
                     request.getPayloadCase(), request.getId(), request.getHubId());
 
-            // Преобразуем proto в avro
-            SensorEventAvro avroEvent = sensorEventMapper.mapToAvro(request);
+            // Занимаем место в бюджете событий в обработке
+            permit = acquire(request.getHubId(), request.getSerializedSize(), responseObserver);
+            if (permit == null) {
+                return;
+            }
 
-            // Отправляем в Kafka асинхронно
-            kafkaEventProducer.sendSensorEvent(avroEvent);
+            // Преобразуем proto в avro и отправляем в Kafka асинхронно
+            CompletableFuture<?> delivery = sendSensorEvent(request);
 
-            // Возвращаем успешный ответ
-            responseObserver.onNext(Empty.getDefaultInstance());
-            responseObserver.onCompleted();
+            // Возвращаем ответ сразу или после подтверждения записи брокером
+            respondOnDelivery(delivery, permit, responseObserver);
 
         } catch (Exception e) {
             log.error("Error processing sensor event", e);
-            responseObserver.onError(new StatusRuntimeException(
-                    Status.INTERNAL
-                            .withDescription(e.getLocalizedMessage())
-                            .withCause(e)
-            ));
+            if (permit != null) {
+                permit.release();
+            }
+            responseObserver.onError(DeliveryStatusMapper.toStatusException(e));
         }
     }
 
@@ -62,27 +86,126 @@ public class EventController extends CollectorControllerGrpc.CollectorController
      */
     @Override
     public void collectHubEvent(HubEventProto request, StreamObserver<Empty> responseObserver) {
+        IngestionLimiter.Permit permit = null;
         try {
-            log.info("Received hub event: type={}, hubId={}",
+            log.debug("Received hub event: type={}, hubId={}",
                     request.getPayloadCase(), request.getHubId());
 
-            // Преобразуем proto в avro
-            HubEventAvro avroEvent = hubEventMapper.mapToAvro(request);
+            // Занимаем место в бюджете событий в обработке
+            permit = acquire(request.getHubId(), request.getSerializedSize(), responseObserver);
+            if (permit == null) {
+                return;
+            }
 
-            // Отправляем в Kafka асинхронно
-            kafkaEventProducer.sendHubEvent(avroEvent);
+            // Преобразуем proto в avro и отправляем в Kafka асинхронно
+            CompletableFuture<?> delivery = sendHubEvent(request);
 
-            // Возвращаем успешный ответ
-            responseObserver.onNext(Empty.getDefaultInstance());
-            responseObserver.onCompleted();
+            // Возвращаем ответ сразу или после подтверждения записи брокером
+            respondOnDelivery(delivery, permit, responseObserver);
 
         } catch (Exception e) {
             log.error("Error processing hub event", e);
-            responseObserver.onError(new StatusRuntimeException(
-                    Status.INTERNAL
-                            .withDescription(e.getLocalizedMessage())
-                            .withCause(e)
-            ));
+            if (permit != null) {
+                permit.release();
+            }
+            responseObserver.onError(DeliveryStatusMapper.toStatusException(e));
+        }
+    }
+
+    /**
+     * Принимает поток пакетов событий датчиков и подтверждает его целиком по завершении.
+     */
+    @Override
+    public StreamObserver<SensorEventBatchProto> collectSensorEvents(
+            StreamObserver<SensorEventBatchAckProto> responseObserver) {
+        return newBatchObserver(responseObserver, false);
+    }
+
+    /**
+     * Принимает поток пакетов событий датчиков и подтверждает каждый пакет отдельно.
+     */
+    @Override
+    public StreamObserver<SensorEventBatchProto> collectSensorEventBatches(
+            StreamObserver<SensorEventBatchAckProto> responseObserver) {
+        return newBatchObserver(responseObserver, true);
+    }
+
+    private SensorEventBatchStreamObserver newBatchObserver(StreamObserver<SensorEventBatchAckProto> responseObserver,
+                                                            boolean ackEachBatch) {
+        return new SensorEventBatchStreamObserver(
+                responseObserver,
+                this::sendSensorEvent,
+                ingestionLimiter,
+                ackEachBatch,
+                kafkaConfig.getProducer().isAwaitDelivery(),
+                streamProperties.getMaxInFlightBatches()
+        );
+    }
+
+    /**
+     * Кодирует событие датчика выбранным способом и передает его продюсеру.
+     */
+    private CompletableFuture<?> sendSensorEvent(SensorEventProto event) {
+        KafkaConfigurationProperties.Producer producer = kafkaConfig.getProducer();
+        if (producer.getWireFormat() == WireFormat.PROTOBUF) {
+            return kafkaEventProducer.sendSensorEvent(event.getHubId(), ProtobufEncoding.encode(event));
+        }
+        if (!producer.isDirectEncoding()) {
+            return kafkaEventProducer.sendSensorEvent(sensorEventMapper.mapToAvro(event));
         }
+
+        return kafkaEventProducer.sendSensorEvent(event.getHubId(), sensorEventAvroEncoder.encode(event));
+    }
+
+    /**
+     * Кодирует событие хаба выбранным способом и передает его продюсеру.
+     */
+    private CompletableFuture<?> sendHubEvent(HubEventProto event) {
+        KafkaConfigurationProperties.Producer producer = kafkaConfig.getProducer();
+        if (producer.getWireFormat() == WireFormat.PROTOBUF) {
+            return kafkaEventProducer.sendHubEvent(event.getHubId(), ProtobufEncoding.encode(event));
+        }
+        if (!producer.isDirectEncoding()) {
+            return kafkaEventProducer.sendHubEvent(hubEventMapper.mapToAvro(event));
+        }
+
+        return kafkaEventProducer.sendHubEvent(event.getHubId(), hubEventAvroEncoder.encode(event));
+    }
+
+    /**
+     * Занимает место под одно событие хаба или отвечает клиенту RESOURCE_EXHAUSTED.
+     */
+    private IngestionLimiter.Permit acquire(String hubId, int bytes, StreamObserver<Empty> responseObserver) {
+        IngestionLimiter.Permit permit = ingestionLimiter.tryAcquire(hubId, 1, bytes);
+        if (permit == null) {
+            responseObserver.onError(DeliveryStatusMapper.overloaded(hubId, ingestionLimiter.retryAfterMillis()));
+        }
+        return permit;
+    }
+
+    /**
+     * Завершает unary-вызов: сразу, либо из callback'а отправки в Kafka,
+     * если включено ожидание подтверждения доставки. Место в бюджете освобождается
+     * по завершении отправки в любом случае.
+     */
+    private void respondOnDelivery(CompletableFuture<?> delivery,
+                                   IngestionLimiter.Permit permit,
+                                   StreamObserver<Empty> responseObserver) {
+        delivery.whenComplete((result, exception) -> permit.release());
+
+        if (!kafkaConfig.getProducer().isAwaitDelivery()) {
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+            return;
+        }
+
+        delivery.whenComplete((result, exception) -> {
+            if (exception != null) {
+                responseObserver.onError(DeliveryStatusMapper.toStatusException(exception));
+            } else {
+                responseObserver.onNext(Empty.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        });
     }
 }
\ No newline at end of file
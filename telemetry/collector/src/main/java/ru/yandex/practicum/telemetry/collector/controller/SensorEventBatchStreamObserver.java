@@ -0,0 +1,302 @@
+package ru.yandex.practicum.telemetry.collector.controller;
+
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchAckProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.telemetry.collector.service.IngestionLimiter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Обработчик входящего потока пакетов событий датчиков.
+ * <p>
+ * Управляет потоком вручную: у клиента запрашивается не больше maxInFlightBatches пакетов,
+ * ожидающих обработки, и только пока исходящий поток готов принимать подтверждения.
+ * Так медленный клиент или медленная запись в Kafka не приводят к накоплению
+ * необработанных пакетов в памяти сервера.
+ * <p>
+ * При ожидании доставки пакет считается обработанным, когда брокер подтвердил все его события.
+ * Подтверждение отправляется из callback'а продюсера, поэтому поток gRPC не блокируется
+ * на ожидании Kafka. Все обращения к responseObserver выполняются под монитором объекта.
+ * <p>
+ * Подтверждения кумулятивные: подтверждение пакета означает, что обработаны и все пакеты,
+ * полученные до него. При нескольких пакетах в обработке записи в Kafka завершаются
+ * в произвольном порядке, поэтому обработанный пакет ждет, пока завершатся все предыдущие.
+ * <p>
+ * Пакет, не прошедший контроль допуска, завершает поток со статусом RESOURCE_EXHAUSTED;
+ * клиент переподключается после рекомендованной задержки и продолжает с последнего
+ * подтвержденного номера.
+ */
+@Slf4j
+public class SensorEventBatchStreamObserver implements StreamObserver<SensorEventBatchProto> {
+
+    private final ServerCallStreamObserver<SensorEventBatchAckProto> responseObserver;
+    private final Function<SensorEventProto, CompletableFuture<?>> sender;
+    private final IngestionLimiter ingestionLimiter;
+    private final boolean ackEachBatch;
+    private final boolean awaitDelivery;
+    private final int maxInFlightBatches;
+
+    /**
+     * Пакеты, запрошенные у клиента и еще не подтвержденные.
+     */
+    private int inFlight;
+
+    /**
+     * Полученные пакеты, отправка которых в Kafka еще не завершена.
+     */
+    private int pendingDeliveries;
+
+    /**
+     * Полученные и еще не подтвержденные пакеты в порядке получения.
+     */
+    private final Deque<PendingBatch> unacknowledged = new ArrayDeque<>();
+
+    /**
+     * Номер последнего подтвержденного пакета.
+     */
+    private long lastSequence;
+
+    /**
+     * Количество принятых событий с начала потока.
+     */
+    private int acceptedTotal;
+
+    private boolean halfClosed;
+    private boolean closed;
+
+    /**
+     * @param responseObserver   поток подтверждений клиенту
+     * @param sender             кодирование и отправка одного события в Kafka
+     * @param ackEachBatch       true - подтверждать каждый пакет, false - только весь поток по его завершении
+     * @param awaitDelivery      подтверждать пакет только после записи всех его событий брокером
+     * @param maxInFlightBatches максимальное число неподтвержденных пакетов
+     */
+    public SensorEventBatchStreamObserver(StreamObserver<SensorEventBatchAckProto> responseObserver,
+                                          Function<SensorEventProto, CompletableFuture<?>> sender,
+                                          IngestionLimiter ingestionLimiter,
+                                          boolean ackEachBatch,
+                                          boolean awaitDelivery,
+                                          int maxInFlightBatches) {
+        this.responseObserver = (ServerCallStreamObserver<SensorEventBatchAckProto>) responseObserver;
+        this.sender = sender;
+        this.ingestionLimiter = ingestionLimiter;
+        this.ackEachBatch = ackEachBatch;
+        this.awaitDelivery = awaitDelivery;
+        this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
+
+        this.responseObserver.disableAutoRequest();
+        this.responseObserver.setOnReadyHandler(this::requestMore);
+    }
+
+    @Override
+    public void onNext(SensorEventBatchProto batch) {
+        log.debug("Received sensor event batch: sequence={}, size={}",
+                batch.getSequence(), batch.getEventsCount());
+
+        PendingBatch pending = new PendingBatch(batch.getSequence(), batch.getEventsCount());
+        synchronized (this) {
+            pendingDeliveries++;
+            unacknowledged.addLast(pending);
+        }
+
+        List<IngestionLimiter.Permit> permits = acquire(batch);
+        if (permits == null) {
+            return;
+        }
+
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[batch.getEventsCount()];
+        try {
+            for (int i = 0; i < deliveries.length; i++) {
+                deliveries[i] = sender.apply(batch.getEvents(i));
+            }
+        } catch (Exception e) {
+            // Часть событий могла уйти в продюсер - освобождаем место после их отправки
+            CompletableFuture.allOf(sent(deliveries)).whenComplete((result, exception) -> release(permits));
+            fail(batch.getSequence(), e);
+            return;
+        }
+
+        CompletableFuture<Void> delivered = CompletableFuture.allOf(deliveries);
+        delivered.whenComplete((result, exception) -> release(permits));
+
+        if (!awaitDelivery) {
+            completeBatch(pending);
+            return;
+        }
+
+        delivered.whenComplete((result, exception) -> {
+            if (exception != null) {
+                fail(batch.getSequence(), exception);
+            } else {
+                completeBatch(pending);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.warn("Sensor event stream cancelled by client: lastSequence={}", lastSequence, t);
+        synchronized (this) {
+            closed = true;
+        }
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+        halfClosed = true;
+        finishIfDrained();
+    }
+
+    /**
+     * Отмечает пакет обработанным и подтверждает непрерывный префикс обработанных пакетов.
+     */
+    private synchronized void completeBatch(PendingBatch batch) {
+        if (closed) {
+            return;
+        }
+
+        pendingDeliveries--;
+        batch.completed = true;
+        while (!unacknowledged.isEmpty() && unacknowledged.peekFirst().completed) {
+            PendingBatch head = unacknowledged.pollFirst();
+            inFlight--;
+            lastSequence = head.sequence;
+            acceptedTotal += head.events;
+
+            if (ackEachBatch) {
+                responseObserver.onNext(ack(head.sequence, head.events));
+            }
+        }
+
+        if (halfClosed) {
+            finishIfDrained();
+        } else {
+            requestMore();
+        }
+    }
+
+    private synchronized void fail(long sequence, Throwable e) {
+        if (closed) {
+            return;
+        }
+        if (e instanceof StatusRuntimeException) {
+            log.warn("Sensor event batch rejected: sequence={}, status={}", sequence, e.getMessage());
+        } else {
+            log.error("Error processing sensor event batch: sequence={}", sequence, e);
+        }
+        responseObserver.onError(DeliveryStatusMapper.toStatusException(e));
+        closed = true;
+    }
+
+    /**
+     * Занимает место под события пакета. Подряд идущие события одного хаба
+     * учитываются одним обращением к бюджету. Если лимит превышен, поток завершается
+     * со статусом RESOURCE_EXHAUSTED для отклоненного хаба.
+     *
+     * @return занятые разрешения или null, если лимит превышен
+     */
+    private List<IngestionLimiter.Permit> acquire(SensorEventBatchProto batch) {
+        List<IngestionLimiter.Permit> permits = new ArrayList<>(1);
+        int count = batch.getEventsCount();
+        int start = 0;
+        while (start < count) {
+            String hubId = batch.getEvents(start).getHubId();
+            int end = start;
+            long bytes = 0;
+            while (end < count) {
+                SensorEventProto event = batch.getEvents(end);
+                if (!event.getHubId().equals(hubId)) {
+                    break;
+                }
+                bytes += event.getSerializedSize();
+                end++;
+            }
+
+            IngestionLimiter.Permit permit = ingestionLimiter.tryAcquire(hubId, end - start, bytes);
+            if (permit == null) {
+                release(permits);
+                fail(batch.getSequence(), DeliveryStatusMapper.overloaded(hubId, ingestionLimiter.retryAfterMillis()));
+                return null;
+            }
+            permits.add(permit);
+            start = end;
+        }
+        return permits;
+    }
+
+    private static void release(List<IngestionLimiter.Permit> permits) {
+        permits.forEach(IngestionLimiter.Permit::release);
+    }
+
+    /**
+     * Отправки, успевшие начаться до ошибки.
+     */
+    private static CompletableFuture<?>[] sent(CompletableFuture<?>[] deliveries) {
+        int length = 0;
+        while (length < deliveries.length && deliveries[length] != null) {
+            length++;
+        }
+        return Arrays.copyOf(deliveries, length);
+    }
+
+    /**
+     * Завершает поток, когда клиент закончил передачу и все полученные пакеты доставлены.
+     */
+    private void finishIfDrained() {
+        if (closed || pendingDeliveries > 0) {
+            return;
+        }
+        log.debug("Sensor event stream completed: lastSequence={}, accepted={}", lastSequence, acceptedTotal);
+
+        if (!ackEachBatch) {
+            responseObserver.onNext(ack(lastSequence, acceptedTotal));
+        }
+        responseObserver.onCompleted();
+        closed = true;
+    }
+
+    /**
+     * Дозапрашивает пакеты до заполнения окна, если клиент готов читать подтверждения.
+     * Иначе запрос откладывается до следующего вызова onReady.
+     */
+    private synchronized void requestMore() {
+        if (closed || halfClosed || !responseObserver.isReady() || inFlight >= maxInFlightBatches) {
+            return;
+        }
+        int credits = maxInFlightBatches - inFlight;
+        inFlight += credits;
+        responseObserver.request(credits);
+    }
+
+    /**
+     * Полученный пакет, ожидающий подтверждения.
+     */
+    private static final class PendingBatch {
+        private final long sequence;
+        private final int events;
+        private boolean completed;
+
+        private PendingBatch(long sequence, int events) {
+            this.sequence = sequence;
+            this.events = events;
+        }
+    }
+
+    private static SensorEventBatchAckProto ack(long sequence, int accepted) {
+        return SensorEventBatchAckProto.newBuilder()
+                .setSequence(sequence)
+                .setAccepted(accepted)
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.yandex.practicum.telemetry.collector.mapper;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+
+import java.util.Arrays;
+
+/**
+ * Запись примитивов в бинарном формате Avro в переиспользуемый растущий буфер.
+ * <p>
+ * Кодирование совпадает с {@code org.apache.avro.io.BinaryEncoder}: int и long - zig-zag varint,
+ * boolean - один байт, строка - длина и байты UTF-8, индекс ветки union и элемент enum - int,
+ * массив - блок с количеством элементов и завершающий ноль.
+ * Строки берутся из {@link ByteString} protobuf-сообщения, где они уже хранятся в UTF-8,
+ * поэтому повторного кодирования и промежуточных объектов нет.
+ * <p>
+ * Экземпляр не потокобезопасен и предназначен для использования через ThreadLocal.
+ */
+public class AvroBinaryWriter {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position;
+
+    /**
+     * Начинает новую запись, сохраняя выделенный буфер.
+     */
+    public AvroBinaryWriter reset() {
+        position = 0;
+        return this;
+    }
+
+    /**
+     * Копия записанных байт.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Записывает байты как есть, например заголовок с отпечатком схемы.
+     */
+    public void writeFixed(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    public void writeBoolean(boolean value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) (value ? 1 : 0);
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(5);
+        int n = (value << 1) ^ (value >> 31);
+        while ((n & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        buffer[position++] = (byte) n;
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(10);
+        long n = (value << 1) ^ (value >> 63);
+        while ((n & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        buffer[position++] = (byte) n;
+    }
+
+    /**
+     * Записывает строку, уже закодированную в UTF-8.
+     */
+    public void writeString(ByteString utf8) {
+        int length = utf8.size();
+        writeInt(length);
+        ensureCapacity(length);
+        utf8.copyTo(buffer, position);
+        position += length;
+    }
+
+    /**
+     * Записывает индекс ветки union.
+     */
+    public void writeIndex(int index) {
+        writeInt(index);
+    }
+
+    /**
+     * Записывает порядковый номер символа enum.
+     */
+    public void writeEnum(int ordinal) {
+        writeInt(ordinal);
+    }
+
+    /**
+     * Записывает количество элементов в начале непустого массива.
+     * Пустой массив состоит только из завершающего блока {@link #writeArrayEnd()}.
+     */
+    public void writeArrayStart(int itemCount) {
+        if (itemCount > 0) {
+            writeLong(itemCount);
+        }
+    }
+
+    public void writeArrayEnd() {
+        writeInt(0);
+    }
+
+    /**
+     * Записывает timestamp_ms так же, как Avro-конвертер для {@link java.time.Instant}.
+     */
+    public void writeTimestampMillis(Timestamp timestamp) {
+        writeLong(toEpochMilli(timestamp));
+    }
+
+    /**
+     * Эквивалент {@code Instant.ofEpochSecond(seconds, nanos).toEpochMilli()} без создания Instant.
+     */
+    static long toEpochMilli(Timestamp timestamp) {
+        long seconds = Math.addExact(timestamp.getSeconds(), Math.floorDiv(timestamp.getNanos(), 1_000_000_000));
+        long nanos = Math.floorMod(timestamp.getNanos(), 1_000_000_000);
+        return Math.addExact(Math.multiplyExact(seconds, 1000L), nanos / 1_000_000);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.yandex.practicum.telemetry.collector.mapper;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.*;
+import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.kafka.telemetry.serialization.SingleObjectEncoding;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
+
+/**
+ * Кодирует proto-событие хаба напрямую в бинарный Avro по схеме HubEventAvro.
+ * <p>
+ * Результат побайтно совпадает с {@link HubEventMapper#mapToAvro} и последующей
+ * сериализацией AvroSerializer. Порядок полей и индексы веток union должны
+ * соответствовать HubEvent.avdl; значения enum сопоставляются по имени, как в маппере.
+ */
+@Component
+public class HubEventAvroEncoder {
+
+    // Индексы веток union payload в HubEventAvro
+    private static final int DEVICE_ADDED = 0;
+    private static final int DEVICE_REMOVED = 1;
+    private static final int SCENARIO_ADDED = 2;
+    private static final int SCENARIO_REMOVED = 3;
+
+    // Индексы веток union value: { null, int, boolean }
+    private static final int NULL_VALUE = 0;
+    private static final int INT_VALUE = 1;
+    private static final int BOOLEAN_VALUE = 2;
+
+    private final ThreadLocal<AvroBinaryWriter> writers = ThreadLocal.withInitial(AvroBinaryWriter::new);
+
+    /**
+     * Заголовок single-object encoding или null, если он выключен для продюсера.
+     */
+    private final byte[] header;
+
+    public HubEventAvroEncoder(KafkaConfigurationProperties kafkaConfig) {
+        String enabled = kafkaConfig.getProducer().getProperties().get(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG);
+        this.header = Boolean.parseBoolean(enabled) ? SingleObjectEncoding.header(HubEventAvro.getClassSchema()) : null;
+    }
+
+    /**
+     * Кодирует proto-событие хаба в байты HubEventAvro.
+     */
+    public byte[] encode(HubEventProto proto) {
+        AvroBinaryWriter writer = writers.get().reset();
+        if (header != null) {
+            writer.writeFixed(header);
+        }
+
+        writer.writeString(proto.getHubIdBytes());
+        writer.writeTimestampMillis(proto.getTimestamp());
+
+        // Определяем тип события по payload
+        switch (proto.getPayloadCase()) {
+            case DEVICE_ADDED -> {
+                DeviceAddedEventProto deviceAdded = proto.getDeviceAdded();
+                writer.writeIndex(DEVICE_ADDED);
+                writer.writeString(deviceAdded.getIdBytes());
+                writer.writeEnum(DeviceTypeAvro.valueOf(deviceAdded.getType().name()).ordinal());
+            }
+            case DEVICE_REMOVED -> {
+                writer.writeIndex(DEVICE_REMOVED);
+                writer.writeString(proto.getDeviceRemoved().getIdBytes());
+            }
+            case SCENARIO_ADDED -> {
+                writer.writeIndex(SCENARIO_ADDED);
+                writeScenarioAdded(writer, proto.getScenarioAdded());
+            }
+            case SCENARIO_REMOVED -> {
+                writer.writeIndex(SCENARIO_REMOVED);
+                writer.writeString(proto.getScenarioRemoved().getNameBytes());
+            }
+            default -> throw new IllegalArgumentException("Unknown hub event type: " + proto.getPayloadCase());
+        }
+
+        return writer.toByteArray();
+    }
+
+    private void writeScenarioAdded(AvroBinaryWriter writer, ScenarioAddedEventProto proto) {
+        writer.writeString(proto.getNameBytes());
+
+        writer.writeArrayStart(proto.getConditionsCount());
+        for (int i = 0; i < proto.getConditionsCount(); i++) {
+            writeScenarioCondition(writer, proto.getConditions(i));
+        }
+        writer.writeArrayEnd();
+
+        writer.writeArrayStart(proto.getActionsCount());
+        for (int i = 0; i < proto.getActionsCount(); i++) {
+            writeDeviceAction(writer, proto.getActions(i));
+        }
+        writer.writeArrayEnd();
+    }
+
+    private void writeScenarioCondition(AvroBinaryWriter writer, ScenarioConditionProto proto) {
+        writer.writeString(proto.getSensorIdBytes());
+        writer.writeEnum(ConditionTypeAvro.valueOf(proto.getType().name()).ordinal());
+        writer.writeEnum(ConditionOperationAvro.valueOf(proto.getOperation().name()).ordinal());
+
+        // Обрабатываем oneof value: может быть bool_value или int_value
+        switch (proto.getValueCase()) {
+            case BOOL_VALUE -> {
+                writer.writeIndex(BOOLEAN_VALUE);
+                writer.writeBoolean(proto.getBoolValue());
+            }
+            case INT_VALUE -> {
+                writer.writeIndex(INT_VALUE);
+                writer.writeInt(proto.getIntValue());
+            }
+            case VALUE_NOT_SET -> writer.writeIndex(NULL_VALUE);
+        }
+    }
+
+    private void writeDeviceAction(AvroBinaryWriter writer, DeviceActionProto proto) {
+        writer.writeString(proto.getSensorIdBytes());
+        writer.writeEnum(ActionTypeAvro.valueOf(proto.getType().name()).ordinal());
+
+        // Обрабатываем optional value
+        if (proto.hasValue()) {
+            writer.writeIndex(INT_VALUE);
+            writer.writeInt(proto.getValue());
+        } else {
+            writer.writeIndex(NULL_VALUE);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.telemetry.collector.mapper;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.*;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.kafka.telemetry.serialization.SingleObjectEncoding;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
+
+/**
+ * Кодирует proto-событие датчика напрямую в бинарный Avro по схеме SensorEventAvro.
+ * <p>
+ * Результат побайтно совпадает с {@link SensorEventMapper#mapToAvro} и последующей
+ * сериализацией AvroSerializer, но без промежуточных Avro-объектов и рефлексивного
+ * обхода схемы. Порядок полей и индексы веток union должны соответствовать SensorEvent.avdl.
+ */
+@Component
+public class SensorEventAvroEncoder {
+
+    // Индексы веток union payload в SensorEventAvro
+    private static final int CLIMATE_SENSOR = 0;
+    private static final int LIGHT_SENSOR = 1;
+    private static final int MOTION_SENSOR = 2;
+    private static final int SWITCH_SENSOR = 3;
+    private static final int TEMPERATURE_SENSOR = 4;
+
+    private final ThreadLocal<AvroBinaryWriter> writers = ThreadLocal.withInitial(AvroBinaryWriter::new);
+
+    /**
+     * Заголовок single-object encoding или null, если он выключен для продюсера.
+     */
+    private final byte[] header;
+
+    public SensorEventAvroEncoder(KafkaConfigurationProperties kafkaConfig) {
+        String enabled = kafkaConfig.getProducer().getProperties().get(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG);
+        this.header = Boolean.parseBoolean(enabled) ? SingleObjectEncoding.header(SensorEventAvro.getClassSchema()) : null;
+    }
+
+    /**
+     * Кодирует proto-событие датчика в байты SensorEventAvro.
+     */
+    public byte[] encode(SensorEventProto proto) {
+        AvroBinaryWriter writer = writers.get().reset();
+        if (header != null) {
+            writer.writeFixed(header);
+        }
+
+        writer.writeString(proto.getIdBytes());
+        writer.writeString(proto.getHubIdBytes());
+        writer.writeTimestampMillis(proto.getTimestamp());
+
+        // Определяем тип события по payload
+        switch (proto.getPayloadCase()) {
+            case MOTION_SENSOR -> {
+                MotionSensorProto motion = proto.getMotionSensor();
+                writer.writeIndex(MOTION_SENSOR);
+                writer.writeInt(motion.getLinkQuality());
+                writer.writeBoolean(motion.getMotion());
+                writer.writeInt(motion.getVoltage());
+            }
+            case TEMPERATURE_SENSOR -> {
+                TemperatureSensorProto temperature = proto.getTemperatureSensor();
+                writer.writeIndex(TEMPERATURE_SENSOR);
+                writer.writeString(proto.getIdBytes());
+                writer.writeString(proto.getHubIdBytes());
+                writer.writeTimestampMillis(proto.getTimestamp());
+                writer.writeInt(temperature.getTemperatureC());
+                writer.writeInt(temperature.getTemperatureF());
+            }
+            case LIGHT_SENSOR -> {
+                LightSensorProto light = proto.getLightSensor();
+                writer.writeIndex(LIGHT_SENSOR);
+                writer.writeInt(light.getLinkQuality());
+                writer.writeInt(light.getLuminosity());
+            }
+            case CLIMATE_SENSOR -> {
+                ClimateSensorProto climate = proto.getClimateSensor();
+                writer.writeIndex(CLIMATE_SENSOR);
+                writer.writeInt(climate.getTemperatureC());
+                writer.writeInt(climate.getHumidity());
+                writer.writeInt(climate.getCo2Level());
+            }
+            case SWITCH_SENSOR -> {
+                writer.writeIndex(SWITCH_SENSOR);
+                writer.writeBoolean(proto.getSwitchSensor().getState());
+            }
+            default -> throw new IllegalArgumentException("Unknown sensor event type: " + proto.getPayloadCase());
+        }
+
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,181 @@
+package ru.yandex.practicum.telemetry.collector.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.telemetry.collector.configuration.IngestionProperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Контроль допуска событий в сервис Collector.
+ * <p>
+ * Считает события и байты, принятые от клиентов, но еще не подтвержденные Kafka,
+ * отдельно для каждого хаба и суммарно. Запрос, превышающий лимит хаба или общий лимит,
+ * отклоняется сразу, не дожидаясь освобождения места. Поэтому один активный хаб
+ * выбирает только свою долю и не задерживает остальных.
+ * <p>
+ * Общие счетчики изменяются без блокировок, через compare-and-set. Счетчики хаба изменяются
+ * внутри compute по его ключу, и бюджет удаляется, как только в нем не остается событий:
+ * идентификаторы хабов приходят от клиентов, и хранить бюджеты всех когда-либо виденных хабов нельзя.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionLimiter {
+
+    /**
+     * Разрешение, которое не нужно освобождать - используется при выключенном контроле.
+     */
+    private static final Permit UNLIMITED = new Permit(null, null, 0, 0);
+
+    private final IngestionProperties properties;
+
+    private final Budget global = new Budget();
+    private final ConcurrentMap<String, Budget> hubs = new ConcurrentHashMap<>();
+
+    /**
+     * Пытается занять место под события хаба.
+     *
+     * @param hubId  идентификатор хаба
+     * @param events количество событий
+     * @param bytes  суммарный размер событий
+     * @return разрешение, которое нужно освободить после записи в Kafka, или null, если лимит превышен
+     */
+    public Permit tryAcquire(String hubId, int events, long bytes) {
+        if (!properties.isEnabled()) {
+            return UNLIMITED;
+        }
+
+        if (!acquireHub(hubId, events, bytes)) {
+            log.debug("Hub {} exceeded its in-flight budget", hubId);
+            return null;
+        }
+
+        if (!global.tryAcquire(events, bytes,
+                properties.getMaxInFlightEvents(), properties.getMaxInFlightBytes())) {
+            releaseHub(hubId, events, bytes);
+            log.debug("Global in-flight budget exceeded, rejecting hub {}", hubId);
+            return null;
+        }
+
+        return new Permit(this, hubId, events, bytes);
+    }
+
+    /**
+     * Задержка, которую стоит выдержать клиенту перед повтором отклоненного запроса.
+     */
+    public long retryAfterMillis() {
+        return properties.getRetryAfter().toMillis();
+    }
+
+    /**
+     * Занимает место в бюджете хаба, создавая бюджет при первом обращении.
+     */
+    private boolean acquireHub(String hubId, int events, long bytes) {
+        boolean[] acquired = new boolean[1];
+        hubs.compute(hubId, (id, budget) -> {
+            Budget hub = budget != null ? budget : new Budget();
+            acquired[0] = hub.tryAcquire(events, bytes,
+                    properties.getMaxInFlightEventsPerHub(), properties.getMaxInFlightBytesPerHub());
+            return hub.isEmpty() ? null : hub;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Освобождает место в бюджете хаба и удаляет бюджет, если он опустел.
+     */
+    private void releaseHub(String hubId, int events, long bytes) {
+        hubs.computeIfPresent(hubId, (id, hub) -> {
+            hub.release(events, bytes);
+            return hub.isEmpty() ? null : hub;
+        });
+    }
+
+    private void release(String hubId, int events, long bytes) {
+        releaseHub(hubId, events, bytes);
+        global.release(events, bytes);
+    }
+
+    /**
+     * Количество хабов, у которых есть события в обработке.
+     */
+    int trackedHubs() {
+        return hubs.size();
+    }
+
+    /**
+     * Счетчики событий и байт в обработке.
+     */
+    private static final class Budget {
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        boolean tryAcquire(int eventCount, long byteCount, long maxEvents, long maxBytes) {
+            if (!tryAdd(events, eventCount, maxEvents)) {
+                return false;
+            }
+            if (!tryAdd(bytes, byteCount, maxBytes)) {
+                events.addAndGet(-eventCount);
+                return false;
+            }
+            return true;
+        }
+
+        void release(int eventCount, long byteCount) {
+            events.addAndGet(-eventCount);
+            bytes.addAndGet(-byteCount);
+        }
+
+        boolean isEmpty() {
+            return events.get() <= 0 && bytes.get() <= 0;
+        }
+
+        /**
+         * Увеличивает счетчик, если результат не превысит лимит.
+         * Запрос, который сам по себе больше лимита, допускается при пустом счетчике,
+         * иначе его нельзя было бы принять никогда.
+         */
+        private static boolean tryAdd(AtomicLong counter, long delta, long limit) {
+            while (true) {
+                long current = counter.get();
+                long next = current + delta;
+                if (next > limit && current > 0) {
+                    return false;
+                }
+                if (counter.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Занятое место в бюджете. Освобождение идемпотентно.
+     */
+    public static final class Permit {
+        private final IngestionLimiter limiter;
+        private final String hubId;
+        private final int events;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(IngestionLimiter limiter, String hubId, int events, long bytes) {
+            this.limiter = limiter;
+            this.hubId = hubId;
+            this.events = events;
+            this.bytes = bytes;
+        }
+
+        public void release() {
+            if (limiter == null || !released.compareAndSet(false, true)) {
+                return;
+            }
+            limiter.release(hubId, events, bytes);
+        }
+    }
+}
@@ -2,14 +2,24 @@ package ru.yandex.practicum.telemetry.collector.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
 import ru.yandex.practicum.telemetry.collector.configuration.KafkaTopicsProperties;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Сервис для отправки событий в Kafka.
+ * <p>
+ * Отправка не сбрасывает буфер продюсера принудительно: записи накапливаются в пакеты
+ * согласно linger.ms и batch.size. Вызывающий код, которому нужна гарантия доставки,
+ * должен дождаться завершения возвращаемого future.
  */
 @Slf4j
 @Service
@@ -18,16 +28,56 @@ public class KafkaEventProducer {
 
     private final KafkaTemplate<String, SensorEventAvro> sensorEventKafkaTemplate;
     private final KafkaTemplate<String, HubEventAvro> hubEventKafkaTemplate;
+    private final KafkaTemplate<String, byte[]> encodedEventKafkaTemplate;
     private final KafkaTopicsProperties topicsProperties;
+    private final KafkaConfigurationProperties kafkaProperties;
+
+    /**
+     * Загружает метаданные топиков при старте, чтобы первые отправки не ждали их
+     * в потоке gRPC. Время ожидания send() и partitionsFor() ограничено max.block.ms,
+     * поэтому запрос повторяется с паузой, пока метаданные не будут получены
+     * или не истечет collector.kafka.producer.metadata-warm-up-timeout.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpMetadata() {
+        KafkaConfigurationProperties.Producer producer = kafkaProperties.getProducer();
+        if (producer.getMetadataWarmUpTimeout().isZero()) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + producer.getMetadataWarmUpTimeout().toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sensorEventKafkaTemplate.partitionsFor(topicsProperties.getSensorsEvents());
+                hubEventKafkaTemplate.partitionsFor(topicsProperties.getHubsEvents());
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.warn("Failed to load topic metadata on startup after {} attempts", attempt, e);
+                    return;
+                }
+                log.debug("Failed to load topic metadata, attempt {}: {}", attempt, e.getMessage());
+            }
+
+            try {
+                Thread.sleep(producer.getMetadataWarmUpBackoff().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
     /**
      * Отправляет событие датчика в Kafka асинхронно.
+     *
+     * @return future, завершающийся после подтверждения записи брокером
      */
-    public void sendSensorEvent(SensorEventAvro event) {
-        log.info("Sending sensor event to Kafka: hubId={}, sensorId={}",
+    public CompletableFuture<SendResult<String, SensorEventAvro>> sendSensorEvent(SensorEventAvro event) {
+        log.debug("Sending sensor event to Kafka: hubId={}, sensorId={}",
                 event.getHubId(), event.getId());
 
-        sensorEventKafkaTemplate.send(
+        return sensorEventKafkaTemplate.send(
                 topicsProperties.getSensorsEvents(),
                 event.getHubId(),
                 event
@@ -41,17 +91,17 @@ public class KafkaEventProducer {
                         result.getRecordMetadata().offset());
             }
         });
-
-        sensorEventKafkaTemplate.flush();
     }
 
     /**
      * Отправляет событие хаба в Kafka асинхронно.
+     *
+     * @return future, завершающийся после подтверждения записи брокером
      */
-    public void sendHubEvent(HubEventAvro event) {
-        log.info("Sending hub event to Kafka: hubId={}", event.getHubId());
+    public CompletableFuture<SendResult<String, HubEventAvro>> sendHubEvent(HubEventAvro event) {
+        log.debug("Sending hub event to Kafka: hubId={}", event.getHubId());
 
-        hubEventKafkaTemplate.send(
+        return hubEventKafkaTemplate.send(
                 topicsProperties.getHubsEvents(),
                 event.getHubId(),
                 event
@@ -65,7 +115,51 @@ public class KafkaEventProducer {
                         result.getRecordMetadata().offset());
             }
         });
+    }
 
-        hubEventKafkaTemplate.flush();
+    /**
+     * Отправляет уже закодированное событие датчика в Kafka асинхронно.
+     *
+     * @return future, завершающийся после подтверждения записи брокером
+     */
+    public CompletableFuture<SendResult<String, byte[]>> sendSensorEvent(String hubId, byte[] event) {
+        log.debug("Sending encoded sensor event to Kafka: hubId={}, size={}", hubId, event.length);
+
+        return encodedEventKafkaTemplate.send(
+                topicsProperties.getSensorsEvents(),
+                hubId,
+                event
+        ).whenComplete((result, exception) -> {
+            if (exception != null) {
+                log.error("Failed to send sensor event to Kafka: hubId={}", hubId, exception);
+            } else {
+                log.debug("Sensor event sent successfully: partition={}, offset={}",
+                        result.getRecordMetadata().partition(),
+                        result.getRecordMetadata().offset());
+            }
+        });
+    }
+
+    /**
+     * Отправляет уже закодированное событие хаба в Kafka асинхронно.
+     *
+     * @return future, завершающийся после подтверждения записи брокером
+     */
+    public CompletableFuture<SendResult<String, byte[]>> sendHubEvent(String hubId, byte[] event) {
+        log.debug("Sending encoded hub event to Kafka: hubId={}, size={}", hubId, event.length);
+
+        return encodedEventKafkaTemplate.send(
+                topicsProperties.getHubsEvents(),
+                hubId,
+                event
+        ).whenComplete((result, exception) -> {
+            if (exception != null) {
+                log.error("Failed to send hub event to Kafka: hubId={}", hubId, exception);
+            } else {
+                log.debug("Hub event sent successfully: partition={}, offset={}",
+                        result.getRecordMetadata().partition(),
+                        result.getRecordMetadata().offset());
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.telemetry.collector.controller;
+
+import com.google.rpc.RetryInfo;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.StatusProto;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryStatusMapperTest {
+
+    @Test
+    void keepsRetryInfoOfOverloadedStatus() throws Exception {
+        StatusRuntimeException overloaded = DeliveryStatusMapper.overloaded("hub-1", 1500);
+
+        StatusRuntimeException mapped = DeliveryStatusMapper.toStatusException(new CompletionException(overloaded));
+
+        assertSame(overloaded, mapped);
+        com.google.rpc.Status status = StatusProto.fromThrowable(mapped);
+        RetryInfo retryInfo = status.getDetails(0).unpack(RetryInfo.class);
+        assertEquals(1, retryInfo.getRetryDelay().getSeconds());
+        assertEquals(500_000_000, retryInfo.getRetryDelay().getNanos());
+    }
+
+    @Test
+    void mapsRetriableKafkaErrorToUnavailable() {
+        StatusRuntimeException mapped = DeliveryStatusMapper.toStatusException(
+                new CompletionException(new TimeoutException("broker timeout")));
+
+        assertEquals(Status.Code.UNAVAILABLE, mapped.getStatus().getCode());
+        assertTrue(mapped.getCause() instanceof TimeoutException);
+    }
+}
@@ -0,0 +1,125 @@
+package ru.yandex.practicum.telemetry.collector.controller;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchAckProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.telemetry.collector.configuration.IngestionProperties;
+import ru.yandex.practicum.telemetry.collector.service.IngestionLimiter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SensorEventBatchStreamObserverTest {
+
+    @SuppressWarnings("unchecked")
+    private final ServerCallStreamObserver<SensorEventBatchAckProto> responseObserver =
+            mock(ServerCallStreamObserver.class);
+
+    /**
+     * Незавершенные отправки по идентификатору события.
+     */
+    private final Map<String, CompletableFuture<Void>> deliveries = new HashMap<>();
+
+    private SensorEventBatchStreamObserver observer;
+
+    @BeforeEach
+    void setUp() {
+        when(responseObserver.isReady()).thenReturn(true);
+        observer = new SensorEventBatchStreamObserver(responseObserver, this::send,
+                new IngestionLimiter(new IngestionProperties()), true, true, 4);
+    }
+
+    @Test
+    void holdsAckUntilEarlierBatchesComplete() {
+        observer.onNext(batch(1, "a"));
+        observer.onNext(batch(2, "b"));
+        observer.onNext(batch(3, "c"));
+
+        deliveries.get("c").complete(null);
+        deliveries.get("b").complete(null);
+        verify(responseObserver, never()).onNext(any());
+
+        deliveries.get("a").complete(null);
+        assertEquals(List.of(1L, 2L, 3L), ackedSequences(3));
+    }
+
+    @Test
+    void acksContiguousPrefixOnly() {
+        observer.onNext(batch(1, "a"));
+        observer.onNext(batch(2, "b"));
+        observer.onNext(batch(3, "c"));
+
+        deliveries.get("a").complete(null);
+        deliveries.get("c").complete(null);
+        assertEquals(List.of(1L), ackedSequences(1));
+
+        deliveries.get("b").complete(null);
+        assertEquals(List.of(1L, 2L, 3L), ackedSequences(3));
+    }
+
+    @Test
+    void reportsRejectedHub() {
+        IngestionProperties properties = new IngestionProperties();
+        properties.setMaxInFlightEventsPerHub(1);
+        observer = new SensorEventBatchStreamObserver(responseObserver, this::send,
+                new IngestionLimiter(properties), true, true, 4);
+
+        observer.onNext(SensorEventBatchProto.newBuilder()
+                .setSequence(1)
+                .addEvents(event("a", "hub-2"))
+                .build());
+        observer.onNext(SensorEventBatchProto.newBuilder()
+                .setSequence(2)
+                .addEvents(event("b", "hub-1"))
+                .addEvents(event("c", "hub-2"))
+                .build());
+
+        ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+        verify(responseObserver).onError(error.capture());
+        Status status = ((StatusRuntimeException) error.getValue()).getStatus();
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, status.getCode());
+        assertTrue(status.getDescription().contains("hub-2"), status.getDescription());
+        assertEquals(Set.of("a"), deliveries.keySet());
+    }
+
+    private List<Long> ackedSequences(int expected) {
+        ArgumentCaptor<SensorEventBatchAckProto> acks = ArgumentCaptor.forClass(SensorEventBatchAckProto.class);
+        verify(responseObserver, times(expected)).onNext(acks.capture());
+        return acks.getAllValues().stream().map(SensorEventBatchAckProto::getSequence).toList();
+    }
+
+    private CompletableFuture<?> send(SensorEventProto event) {
+        CompletableFuture<Void> delivery = new CompletableFuture<>();
+        deliveries.put(event.getId(), delivery);
+        return delivery;
+    }
+
+    private static SensorEventBatchProto batch(long sequence, String eventId) {
+        return SensorEventBatchProto.newBuilder()
+                .setSequence(sequence)
+                .addEvents(event(eventId, "hub-1"))
+                .build();
+    }
+
+    private static SensorEventProto event(String eventId, String hubId) {
+        return SensorEventProto.newBuilder().setId(eventId).setHubId(hubId).build();
+    }
+}
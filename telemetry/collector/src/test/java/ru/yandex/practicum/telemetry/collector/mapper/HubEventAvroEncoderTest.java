@@ -0,0 +1,127 @@
+package ru.yandex.practicum.telemetry.collector.mapper;
+
+import com.google.protobuf.Timestamp;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionOperationProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceRemovedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioConditionProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioRemovedEventProto;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Проверяет, что {@link HubEventAvroEncoder} дает те же байты, что {@link HubEventMapper#mapToAvro}
+ * с последующей сериализацией {@link AvroSerializer}, для всех типов событий хаба.
+ */
+class HubEventAvroEncoderTest {
+
+    private final HubEventMapper mapper = new HubEventMapper();
+
+    static Stream<Arguments> events() {
+        List<HubEventProto> events = new ArrayList<>();
+        for (DeviceTypeProto type : DeviceTypeProto.values()) {
+            if (type != DeviceTypeProto.UNRECOGNIZED) {
+                events.add(event("hub-1")
+                        .setDeviceAdded(DeviceAddedEventProto.newBuilder().setId("device-" + type).setType(type))
+                        .build());
+            }
+        }
+        events.add(event("хаб-кухня")
+                .setDeviceRemoved(DeviceRemovedEventProto.newBuilder().setId("датчик-🌡"))
+                .build());
+        events.add(event("hub-1")
+                .setScenarioRemoved(ScenarioRemovedEventProto.newBuilder().setName("Ночной режим"))
+                .build());
+        events.add(event("hub-1")
+                .setScenarioAdded(ScenarioAddedEventProto.newBuilder().setName("пустой"))
+                .build());
+        events.add(event("hub-1")
+                .setScenarioAdded(ScenarioAddedEventProto.newBuilder()
+                        .setName("Свет при движении 💡")
+                        .addConditions(condition("motion-1", ConditionTypeProto.MOTION, ConditionOperationProto.EQUALS)
+                                .setBoolValue(true))
+                        .addConditions(condition("switch-1", ConditionTypeProto.SWITCH, ConditionOperationProto.EQUALS)
+                                .setBoolValue(false))
+                        .addConditions(condition("climate-1", ConditionTypeProto.TEMPERATURE, ConditionOperationProto.LOWER_THAN)
+                                .setIntValue(-15))
+                        .addConditions(condition("climate-1", ConditionTypeProto.CO2LEVEL, ConditionOperationProto.GREATER_THAN)
+                                .setIntValue(Integer.MAX_VALUE))
+                        .addConditions(condition("climate-1", ConditionTypeProto.HUMIDITY, ConditionOperationProto.GREATER_THAN)
+                                .setIntValue(Integer.MIN_VALUE))
+                        .addConditions(condition("light-1", ConditionTypeProto.LUMINOSITY, ConditionOperationProto.LOWER_THAN))
+                        .addActions(DeviceActionProto.newBuilder().setSensorId("lamp-1").setType(ActionTypeProto.ACTIVATE))
+                        .addActions(DeviceActionProto.newBuilder().setSensorId("lamp-2").setType(ActionTypeProto.DEACTIVATE))
+                        .addActions(DeviceActionProto.newBuilder().setSensorId("lamp-3").setType(ActionTypeProto.INVERSE))
+                        .addActions(DeviceActionProto.newBuilder().setSensorId("термостат").setType(ActionTypeProto.SET_VALUE)
+                                .setValue(-5))
+                        .addActions(DeviceActionProto.newBuilder().setSensorId("dimmer").setType(ActionTypeProto.SET_VALUE)
+                                .setValue(0)))
+                .build());
+        events.add(event("hub-1")
+                .setScenarioAdded(ScenarioAddedEventProto.newBuilder()
+                        .setName("только условия")
+                        .addConditions(condition("motion-1", ConditionTypeProto.MOTION, ConditionOperationProto.EQUALS)
+                                .setBoolValue(true)))
+                .build());
+        events.add(event("hub-1")
+                .setScenarioAdded(ScenarioAddedEventProto.newBuilder()
+                        .setName("только действия")
+                        .addActions(DeviceActionProto.newBuilder().setSensorId("lamp-1").setType(ActionTypeProto.ACTIVATE)))
+                .build());
+
+        return Stream.of(false, true)
+                .flatMap(header -> events.stream().map(event -> Arguments.of(header, event)));
+    }
+
+    @ParameterizedTest(name = "header={0}: {1}")
+    @MethodSource("events")
+    void encodesSameBytesAsAvroSerializer(boolean header, HubEventProto event) {
+        HubEventAvroEncoder encoder = new HubEventAvroEncoder(kafkaConfig(header));
+
+        assertArrayEquals(serialize(header, event), encoder.encode(event));
+    }
+
+    private byte[] serialize(boolean header, HubEventProto event) {
+        try (AvroSerializer<HubEventAvro> serializer = new AvroSerializer<>()) {
+            serializer.configure(Map.of(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG, header), false);
+            return serializer.serialize("telemetry.hubs.v1", mapper.mapToAvro(event));
+        }
+    }
+
+    private static KafkaConfigurationProperties kafkaConfig(boolean header) {
+        KafkaConfigurationProperties config = new KafkaConfigurationProperties();
+        config.getProducer().getProperties().put(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG, String.valueOf(header));
+        return config;
+    }
+
+    private static ScenarioConditionProto.Builder condition(String sensorId, ConditionTypeProto type,
+                                                            ConditionOperationProto operation) {
+        return ScenarioConditionProto.newBuilder()
+                .setSensorId(sensorId)
+                .setType(type)
+                .setOperation(operation);
+    }
+
+    private static HubEventProto.Builder event(String hubId) {
+        return HubEventProto.newBuilder()
+                .setHubId(hubId)
+                .setTimestamp(Timestamp.newBuilder().setSeconds(1_700_000_000L).setNanos(999_999_999));
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.telemetry.collector.mapper;
+
+import com.google.protobuf.Timestamp;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.yandex.practicum.grpc.telemetry.event.ClimateSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.LightSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.MotionSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SwitchSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.AvroSerializer;
+import ru.yandex.practicum.telemetry.collector.configuration.KafkaConfigurationProperties;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Проверяет, что {@link SensorEventAvroEncoder} дает те же байты, что {@link SensorEventMapper#mapToAvro}
+ * с последующей сериализацией {@link AvroSerializer}, для всех типов событий датчиков.
+ */
+class SensorEventAvroEncoderTest {
+
+    private final SensorEventMapper mapper = new SensorEventMapper();
+
+    static Stream<Arguments> events() {
+        List<SensorEventProto> events = List.of(
+                event("sensor-1", "hub-1")
+                        .setClimateSensor(ClimateSensorProto.newBuilder()
+                                .setTemperatureC(-12)
+                                .setHumidity(45)
+                                .setCo2Level(1200))
+                        .build(),
+                event("датчик-освещения", "хаб-гостиная")
+                        .setLightSensor(LightSensorProto.newBuilder()
+                                .setLinkQuality(Integer.MAX_VALUE)
+                                .setLuminosity(Integer.MIN_VALUE))
+                        .build(),
+                event("motion-🚶", "hub-🏠")
+                        .setMotionSensor(MotionSensorProto.newBuilder()
+                                .setLinkQuality(-1)
+                                .setMotion(true)
+                                .setVoltage(-64))
+                        .build(),
+                event("switch-1", "hub-1")
+                        .setSwitchSensor(SwitchSensorProto.newBuilder().setState(false))
+                        .build(),
+                event("switch-2", "hub-2")
+                        .setSwitchSensor(SwitchSensorProto.newBuilder().setState(true))
+                        .build(),
+                event("temperature-1", "hub-1")
+                        .setTemperatureSensor(TemperatureSensorProto.newBuilder()
+                                .setTemperatureC(-40)
+                                .setTemperatureF(-40))
+                        .build(),
+                event("", "")
+                        .setTemperatureSensor(TemperatureSensorProto.getDefaultInstance())
+                        .build());
+
+        return Stream.of(false, true)
+                .flatMap(header -> events.stream().map(event -> Arguments.of(header, event)));
+    }
+
+    @ParameterizedTest(name = "header={0}: {1}")
+    @MethodSource("events")
+    void encodesSameBytesAsAvroSerializer(boolean header, SensorEventProto event) {
+        SensorEventAvroEncoder encoder = new SensorEventAvroEncoder(kafkaConfig(header));
+
+        assertArrayEquals(serialize(header, event), encoder.encode(event));
+    }
+
+    private byte[] serialize(boolean header, SensorEventProto event) {
+        try (AvroSerializer<SensorEventAvro> serializer = new AvroSerializer<>()) {
+            serializer.configure(Map.of(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG, header), false);
+            return serializer.serialize("telemetry.sensors.v1", mapper.mapToAvro(event));
+        }
+    }
+
+    private static KafkaConfigurationProperties kafkaConfig(boolean header) {
+        KafkaConfigurationProperties config = new KafkaConfigurationProperties();
+        config.getProducer().getProperties().put(AvroSerializer.SINGLE_OBJECT_ENCODING_CONFIG, String.valueOf(header));
+        return config;
+    }
+
+    private static SensorEventProto.Builder event(String id, String hubId) {
+        return SensorEventProto.newBuilder()
+                .setId(id)
+                .setHubId(hubId)
+                .setTimestamp(Timestamp.newBuilder().setSeconds(1_700_000_000L).setNanos(123_456_789));
+    }
+}
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.telemetry.collector.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.telemetry.collector.configuration.IngestionProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IngestionLimiterTest {
+
+    private final IngestionProperties properties = new IngestionProperties();
+    private final IngestionLimiter limiter = new IngestionLimiter(properties);
+
+    @Test
+    void removesHubBudgetWhenAllEventsReleased() {
+        IngestionLimiter.Permit first = limiter.tryAcquire("hub-1", 10, 100);
+        IngestionLimiter.Permit second = limiter.tryAcquire("hub-1", 5, 50);
+        assertEquals(1, limiter.trackedHubs());
+
+        first.release();
+        assertEquals(1, limiter.trackedHubs());
+
+        second.release();
+        second.release();
+        assertEquals(0, limiter.trackedHubs());
+    }
+
+    @Test
+    void doesNotKeepBudgetOfRejectedRequest() {
+        properties.setMaxInFlightEvents(10);
+        IngestionLimiter.Permit permit = limiter.tryAcquire("hub-1", 10, 100);
+
+        assertNull(limiter.tryAcquire("hub-2", 1, 10));
+        assertEquals(1, limiter.trackedHubs());
+
+        permit.release();
+        assertEquals(0, limiter.trackedHubs());
+    }
+
+    @Test
+    void rejectsHubOverItsLimitAfterBudgetRecreated() {
+        properties.setMaxInFlightEventsPerHub(10);
+        limiter.tryAcquire("hub-1", 10, 100).release();
+
+        IngestionLimiter.Permit permit = limiter.tryAcquire("hub-1", 10, 100);
+        assertNotNull(permit);
+        assertNull(limiter.tryAcquire("hub-1", 1, 10));
+        assertNotNull(limiter.tryAcquire("hub-2", 1, 10));
+    }
+}
@@ -1,14 +1,20 @@
 package ru.yandex.practicum.kafka.telemetry.deserializer;
 
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.mapper.HubEventProtoMapper;
 import ru.yandex.practicum.kafka.telemetry.serialization.BaseAvroDeserializer;
+import ru.yandex.practicum.kafka.telemetry.serialization.ProtobufEncoding;
 
 /**
  * Десериализатор для событий хабов.
  * Используется для чтения событий из топика Kafka.
+ * Записи в формате protobuf преобразуются в HubEventAvro, поэтому потребитель
+ * работает одинаково при любом формате, выбранном в Collector.
  */
 public class HubEventDeserializer extends BaseAvroDeserializer<HubEventAvro> {
 
+    private final HubEventProtobufDeserializer protobufDeserializer = new HubEventProtobufDeserializer();
+
     /**
      * Конструктор по умолчанию.
      * Использует схему класса HubEventAvro для десериализации.
@@ -16,4 +22,12 @@ public class HubEventDeserializer extends BaseAvroDeserializer<HubEventAvro> {
     public HubEventDeserializer() {
         super(HubEventAvro.getClassSchema());
     }
-}
\ No newline at end of file
+
+    @Override
+    public HubEventAvro deserialize(String topic, byte[] data) {
+        if (data != null && ProtobufEncoding.hasHeader(data)) {
+            return HubEventProtoMapper.toAvro(protobufDeserializer.deserialize(topic, data));
+        }
+        return super.deserialize(topic, data);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.kafka.telemetry.deserializer;
+
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.kafka.telemetry.serialization.BaseProtobufDeserializer;
+
+/**
+ * Десериализатор для событий хабов в формате protobuf.
+ * Возвращает proto-сообщение без преобразования в Avro.
+ */
+public class HubEventProtobufDeserializer extends BaseProtobufDeserializer<HubEventProto> {
+
+    /**
+     * Конструктор по умолчанию.
+     * Использует парсер HubEventProto.
+     */
+    public HubEventProtobufDeserializer() {
+        super(HubEventProto.parser());
+    }
+}
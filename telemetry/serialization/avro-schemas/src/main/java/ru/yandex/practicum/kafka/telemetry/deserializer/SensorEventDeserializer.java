@@ -1,14 +1,20 @@
 package ru.yandex.practicum.kafka.telemetry.deserializer;
 
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.mapper.SensorEventProtoMapper;
 import ru.yandex.practicum.kafka.telemetry.serialization.BaseAvroDeserializer;
+import ru.yandex.practicum.kafka.telemetry.serialization.ProtobufEncoding;
 
 /**
  * Десериализатор для событий датчиков.
  * Используется для чтения событий из топика Kafka.
+ * Записи в формате protobuf преобразуются в SensorEventAvro, поэтому потребитель
+ * работает одинаково при любом формате, выбранном в Collector.
  */
 public class SensorEventDeserializer extends BaseAvroDeserializer<SensorEventAvro> {
 
+    private final SensorEventProtobufDeserializer protobufDeserializer = new SensorEventProtobufDeserializer();
+
     /**
      * Конструктор по умолчанию.
      * Использует схему класса SensorEventAvro для десериализации.
@@ -16,4 +22,12 @@ public class SensorEventDeserializer extends BaseAvroDeserializer<SensorEventAvr
     public SensorEventDeserializer() {
         super(SensorEventAvro.getClassSchema());
     }
-}
\ No newline at end of file
+
+    @Override
+    public SensorEventAvro deserialize(String topic, byte[] data) {
+        if (data != null && ProtobufEncoding.hasHeader(data)) {
+            return SensorEventProtoMapper.toAvro(protobufDeserializer.deserialize(topic, data));
+        }
+        return super.deserialize(topic, data);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.kafka.telemetry.deserializer;
+
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.kafka.telemetry.serialization.BaseProtobufDeserializer;
+
+/**
+ * Десериализатор для событий датчиков в формате protobuf.
+ * Возвращает proto-сообщение без преобразования в Avro.
+ */
+public class SensorEventProtobufDeserializer extends BaseProtobufDeserializer<SensorEventProto> {
+
+    /**
+     * Конструктор по умолчанию.
+     * Использует парсер SensorEventProto.
+     */
+    public SensorEventProtobufDeserializer() {
+        super(SensorEventProto.parser());
+    }
+}
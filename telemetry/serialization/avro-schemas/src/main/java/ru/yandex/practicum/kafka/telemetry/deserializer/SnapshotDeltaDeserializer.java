@@ -0,0 +1,30 @@
+package ru.yandex.practicum.kafka.telemetry.deserializer;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.kafka.telemetry.serialization.BaseAvroDeserializer;
+import ru.yandex.practicum.kafka.telemetry.serialization.SingleObjectEncoding;
+
+/**
+ * Десериализатор топика снапшотов, понимающий и полные, и дельта-снапшоты.
+ * <p>
+ * Дельта-снапшоты всегда пишутся с заголовком {@link SingleObjectEncoding}, поэтому
+ * схема писателя определяется по отпечатку. Запись без заголовка считается полным
+ * снапшотом {@link SensorsSnapshotAvro} и читается как опорный кадр версии 0.
+ * Полное состояние хаба из дельт собирает
+ * {@link ru.yandex.practicum.kafka.telemetry.snapshot.SnapshotReassembler}.
+ */
+public class SnapshotDeltaDeserializer extends BaseAvroDeserializer<SensorsSnapshotDeltaAvro> {
+
+    public SnapshotDeltaDeserializer() {
+        super(SensorsSnapshotDeltaAvro.getClassSchema());
+    }
+
+    @Override
+    public SensorsSnapshotDeltaAvro deserialize(String topic, byte[] data) {
+        if (data != null && !SingleObjectEncoding.hasHeader(data)) {
+            return deserialize(data, SensorsSnapshotAvro.getClassSchema());
+        }
+        return super.deserialize(topic, data);
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.kafka.telemetry.mapper;
+
+import ru.yandex.practicum.grpc.telemetry.event.*;
+import ru.yandex.practicum.kafka.telemetry.event.*;
+
+import java.time.Instant;
+import java.util.stream.Collectors;
+
+/**
+ * Маппер для преобразования proto-событий хабов в Avro-формат.
+ * Используется Collector при записи и десериализаторами при чтении событий в формате protobuf.
+ */
+public final class HubEventProtoMapper {
+
+    private HubEventProtoMapper() {
+    }
+
+    /**
+     * Преобразует proto-событие хаба в avro-событие.
+     */
+    public static HubEventAvro toAvro(HubEventProto proto) {
+        HubEventAvro.Builder builder = HubEventAvro.newBuilder()
+                .setHubId(proto.getHubId())
+                .setTimestamp(Instant.ofEpochSecond(proto.getTimestamp().getSeconds(), proto.getTimestamp().getNanos()));
+
+        // Определяем тип события по payload
+        switch (proto.getPayloadCase()) {
+            case DEVICE_ADDED:
+                builder.setPayload(mapDeviceAdded(proto.getDeviceAdded()));
+                break;
+            case DEVICE_REMOVED:
+                builder.setPayload(mapDeviceRemoved(proto.getDeviceRemoved()));
+                break;
+            case SCENARIO_ADDED:
+                builder.setPayload(mapScenarioAdded(proto.getScenarioAdded()));
+                break;
+            case SCENARIO_REMOVED:
+                builder.setPayload(mapScenarioRemoved(proto.getScenarioRemoved()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown hub event type: " + proto.getPayloadCase());
+        }
+
+        return builder.build();
+    }
+
+    private static DeviceAddedEventAvro mapDeviceAdded(DeviceAddedEventProto proto) {
+        return DeviceAddedEventAvro.newBuilder()
+                .setId(proto.getId())
+                .setType(mapDeviceType(proto.getType()))
+                .build();
+    }
+
+    private static DeviceRemovedEventAvro mapDeviceRemoved(DeviceRemovedEventProto proto) {
+        return DeviceRemovedEventAvro.newBuilder()
+                .setId(proto.getId())
+                .build();
+    }
+
+    private static ScenarioAddedEventAvro mapScenarioAdded(ScenarioAddedEventProto proto) {
+        return ScenarioAddedEventAvro.newBuilder()
+                .setName(proto.getName())
+                .setConditions(proto.getConditionsList().stream()
+                        .map(HubEventProtoMapper::mapScenarioCondition)
+                        .collect(Collectors.toList()))
+                .setActions(proto.getActionsList().stream()
+                        .map(HubEventProtoMapper::mapDeviceAction)
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private static ScenarioRemovedEventAvro mapScenarioRemoved(ScenarioRemovedEventProto proto) {
+        return ScenarioRemovedEventAvro.newBuilder()
+                .setName(proto.getName())
+                .build();
+    }
+
+    private static ScenarioConditionAvro mapScenarioCondition(ScenarioConditionProto proto) {
+        ScenarioConditionAvro.Builder builder = ScenarioConditionAvro.newBuilder()
+                .setSensorId(proto.getSensorId())
+                .setType(mapConditionType(proto.getType()))
+                .setOperation(mapConditionOperation(proto.getOperation()));
+
+        // Обрабатываем oneof value: может быть bool_value или int_value
+        switch (proto.getValueCase()) {
+            case BOOL_VALUE:
+                builder.setValue(proto.getBoolValue());
+                break;
+            case INT_VALUE:
+                builder.setValue(proto.getIntValue());
+                break;
+            case VALUE_NOT_SET:
+                builder.setValue(null);
+                break;
+        }
+
+        return builder.build();
+    }
+
+    private static DeviceActionAvro mapDeviceAction(DeviceActionProto proto) {
+        DeviceActionAvro.Builder builder = DeviceActionAvro.newBuilder()
+                .setSensorId(proto.getSensorId())
+                .setType(mapActionType(proto.getType()));
+
+        // Обрабатываем optional value
+        if (proto.hasValue()) {
+            builder.setValue(proto.getValue());
+        } else {
+            builder.setValue(null);
+        }
+
+        return builder.build();
+    }
+
+    private static DeviceTypeAvro mapDeviceType(Object type) {
+        return DeviceTypeAvro.valueOf(type.toString());
+    }
+
+    private static ActionTypeAvro mapActionType(Object type) {
+        return ActionTypeAvro.valueOf(type.toString());
+    }
+
+    private static ConditionTypeAvro mapConditionType(Object type) {
+        return ConditionTypeAvro.valueOf(type.toString());
+    }
+
+    private static ConditionOperationAvro mapConditionOperation(Object operation) {
+        return ConditionOperationAvro.valueOf(operation.toString());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.kafka.telemetry.mapper;
+
+import ru.yandex.practicum.grpc.telemetry.event.*;
+import ru.yandex.practicum.kafka.telemetry.event.*;
+
+import java.time.Instant;
+
+/**
+ * Маппер для преобразования gRPC proto-событий датчиков в Avro-формат.
+ * Используется Collector при записи и десериализаторами при чтении событий в формате protobuf.
+ */
+public final class SensorEventProtoMapper {
+
+    private SensorEventProtoMapper() {
+    }
+
+    /**
+     * Преобразует proto-событие датчика в avro-событие.
+     */
+    public static SensorEventAvro toAvro(SensorEventProto proto) {
+        SensorEventAvro.Builder builder = SensorEventAvro.newBuilder()
+                .setId(proto.getId())
+                .setHubId(proto.getHubId())
+                .setTimestamp(Instant.ofEpochSecond(proto.getTimestamp().getSeconds(), proto.getTimestamp().getNanos()));
+
+        // Определяем тип события по payload
+        switch (proto.getPayloadCase()) {
+            case MOTION_SENSOR:
+                builder.setPayload(mapMotionSensor(proto.getMotionSensor()));
+                break;
+            case TEMPERATURE_SENSOR:
+                builder.setPayload(mapTemperatureSensor(proto));
+                break;
+            case LIGHT_SENSOR:
+                builder.setPayload(mapLightSensor(proto.getLightSensor()));
+                break;
+            case CLIMATE_SENSOR:
+                builder.setPayload(mapClimateSensor(proto.getClimateSensor()));
+                break;
+            case SWITCH_SENSOR:
+                builder.setPayload(mapSwitchSensor(proto.getSwitchSensor()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown sensor event type: " + proto.getPayloadCase());
+        }
+
+        return builder.build();
+    }
+
+    private static MotionSensorAvro mapMotionSensor(MotionSensorProto proto) {
+        return MotionSensorAvro.newBuilder()
+                .setLinkQuality(proto.getLinkQuality())
+                .setMotion(proto.getMotion())
+                .setVoltage(proto.getVoltage())
+                .build();
+    }
+
+    private static TemperatureSensorAvro mapTemperatureSensor(SensorEventProto proto) {
+        return TemperatureSensorAvro.newBuilder()
+                .setId(proto.getId())
+                .setHubId(proto.getHubId())
+                .setTimestamp(Instant.ofEpochSecond(proto.getTimestamp().getSeconds(), proto.getTimestamp().getNanos()))
+                .setTemperatureC(proto.getTemperatureSensor().getTemperatureC())
+                .setTemperatureF(proto.getTemperatureSensor().getTemperatureF())
+                .build();
+    }
+
+    private static LightSensorAvro mapLightSensor(LightSensorProto proto) {
+        return LightSensorAvro.newBuilder()
+                .setLinkQuality(proto.getLinkQuality())
+                .setLuminosity(proto.getLuminosity())
+                .build();
+    }
+
+    private static ClimateSensorAvro mapClimateSensor(ClimateSensorProto proto) {
+        return ClimateSensorAvro.newBuilder()
+                .setTemperatureC(proto.getTemperatureC())
+                .setHumidity(proto.getHumidity())
+                .setCo2Level(proto.getCo2Level())
+                .build();
+    }
+
+    private static SwitchSensorAvro mapSwitchSensor(SwitchSensorProto proto) {
+        return SwitchSensorAvro.newBuilder()
+                .setState(proto.getState())
+                .build();
+    }
+}
\ No newline at end of file
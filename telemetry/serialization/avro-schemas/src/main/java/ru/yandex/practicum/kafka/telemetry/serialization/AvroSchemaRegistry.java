@@ -0,0 +1,50 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+import org.apache.avro.Schema;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Локальный реестр схем Avro внутри процесса, индексированный по отпечатку схемы.
+ * <p>
+ * Заранее содержит текущие схемы событий и снапшотов. Схемы, которыми пишет
+ * {@link AvroSerializer}, регистрируются автоматически; предыдущие версии схем,
+ * которые еще могут встретиться в топиках, регистрируются вызовом {@link #register(Schema)}.
+ */
+public final class AvroSchemaRegistry {
+
+    private static final ConcurrentMap<Long, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+    static {
+        register(SensorEventAvro.getClassSchema());
+        register(HubEventAvro.getClassSchema());
+        register(SensorsSnapshotAvro.getClassSchema());
+        register(SensorsSnapshotDeltaAvro.getClassSchema());
+    }
+
+    private AvroSchemaRegistry() {
+    }
+
+    /**
+     * Регистрирует схему.
+     *
+     * @return отпечаток схемы
+     */
+    public static long register(Schema schema) {
+        long fingerprint = SingleObjectEncoding.fingerprint(schema);
+        SCHEMAS.putIfAbsent(fingerprint, schema);
+        return fingerprint;
+    }
+
+    /**
+     * Схема по отпечатку или null, если она не зарегистрирована.
+     */
+    public static Schema find(long fingerprint) {
+        return SCHEMAS.get(fingerprint);
+    }
+}
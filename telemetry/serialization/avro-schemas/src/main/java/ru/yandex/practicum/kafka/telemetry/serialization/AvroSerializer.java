@@ -1,32 +1,154 @@
 package ru.yandex.practicum.kafka.telemetry.serialization;
 
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Serializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Универсальный сериализатор для Avro-сообщений.
+ * <p>
+ * {@link SpecificDatumWriter} создается один раз на схему и разделяется между потоками.
+ * Буфер и {@link BinaryEncoder} переиспользуются в пределах потока, поэтому на запись
+ * выделяется только итоговый массив, который требует контракт {@link Serializer}.
+ * <p>
+ * Если включен {@link #ADAPTIVE_BUFFER_CONFIG}, размер буфера потока подстраивается
+ * под гистограмму размеров записей: новый буфер сразу выделяется под типичную запись,
+ * а буфер, разросшийся после редкой большой записи, уменьшается обратно.
+ * <p>
+ * Если включен {@link #SINGLE_OBJECT_ENCODING_CONFIG}, перед записью пишется заголовок
+ * {@link SingleObjectEncoding} с отпечатком схемы, а схема регистрируется в {@link AvroSchemaRegistry}.
  */
 public class AvroSerializer<T extends SpecificRecordBase> implements Serializer<T> {
 
+    /**
+     * Включает подстройку размера буферов под размеры записей.
+     */
+    public static final String ADAPTIVE_BUFFER_CONFIG = "avro.serializer.adaptive.buffer";
+
+    /**
+     * Включает заголовок single-object encoding с отпечатком схемы писателя.
+     */
+    public static final String SINGLE_OBJECT_ENCODING_CONFIG = "avro.serializer.single.object.encoding";
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * Во сколько раз буфер может превышать оценку размера записи, прежде чем будет уменьшен.
+     */
+    private static final int SHRINK_FACTOR = 4;
+
+    private static final double SIZE_QUANTILE = 0.99;
+
+    private static final ConcurrentMap<Schema, SchemaWriter> WRITERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<EncoderState> ENCODERS = new ThreadLocal<>();
+
+    private RecordSizeHistogram sizes;
+    private boolean singleObjectEncoding;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object adaptive = configs.get(ADAPTIVE_BUFFER_CONFIG);
+        if (adaptive != null && Boolean.parseBoolean(adaptive.toString())) {
+            sizes = new RecordSizeHistogram();
+        }
+        Object header = configs.get(SINGLE_OBJECT_ENCODING_CONFIG);
+        singleObjectEncoding = header != null && Boolean.parseBoolean(header.toString());
+    }
+
     @Override
     public byte[] serialize(String topic, T data) {
         if (data == null) {
             return null;
         }
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            var encoder = org.apache.avro.io.EncoderFactory.get()
-                    .binaryEncoder(outputStream, null);
-            var writer = new org.apache.avro.specific.SpecificDatumWriter<>(data.getSchema());
-            writer.write(data, encoder);
-            encoder.flush();
-            return outputStream.toByteArray();
+        EncoderState state = encoderState();
+        try {
+            SchemaWriter writer = writer(data.getSchema());
+            state.output.reset();
+            if (singleObjectEncoding) {
+                state.output.write(writer.header, 0, writer.header.length);
+            }
+            state.encoder = EncoderFactory.get().binaryEncoder(state.output, state.encoder);
+            writer.datumWriter.write(data, state.encoder);
+            state.encoder.flush();
+            return state.output.toByteArray();
         } catch (IOException e) {
             throw new SerializationException("Error serializing Avro message", e);
+        } finally {
+            adjustBuffer(state.output);
+        }
+    }
+
+    private static SchemaWriter writer(Schema schema) {
+        return WRITERS.computeIfAbsent(schema, SchemaWriter::new);
+    }
+
+    private EncoderState encoderState() {
+        EncoderState state = ENCODERS.get();
+        if (state == null) {
+            state = new EncoderState(initialBufferSize());
+            ENCODERS.set(state);
+        }
+        return state;
+    }
+
+    private int initialBufferSize() {
+        int estimate = sizes != null ? sizes.percentile(SIZE_QUANTILE) : 0;
+        return estimate > 0 ? estimate : DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * Учитывает размер записи и уменьшает буфер, если он намного больше типичной записи.
+     */
+    private void adjustBuffer(GrowableByteArrayOutputStream output) {
+        if (sizes == null) {
+            return;
+        }
+        sizes.record(output.size());
+        output.reset();
+        if (output.capacity() <= DEFAULT_BUFFER_SIZE * SHRINK_FACTOR) {
+            return;
+        }
+
+        int estimate = Math.max(sizes.percentile(SIZE_QUANTILE), DEFAULT_BUFFER_SIZE);
+        if (output.capacity() > estimate * SHRINK_FACTOR) {
+            output.shrink(estimate);
+        }
+    }
+
+    /**
+     * Писатель и заголовок одной схемы.
+     */
+    private static final class SchemaWriter {
+        private final DatumWriter<Object> datumWriter;
+        private final byte[] header;
+
+        private SchemaWriter(Schema schema) {
+            AvroSchemaRegistry.register(schema);
+            this.datumWriter = new SpecificDatumWriter<>(schema);
+            this.header = SingleObjectEncoding.header(schema);
+        }
+    }
+
+    /**
+     * Буфер и кодировщик одного потока.
+     */
+    private static final class EncoderState {
+        private final GrowableByteArrayOutputStream output;
+        private BinaryEncoder encoder;
+
+        private EncoderState(int bufferSize) {
+            this.output = new GrowableByteArrayOutputStream(bufferSize);
         }
     }
 }
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.kafka.telemetry.serialization;
 
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
@@ -10,18 +11,49 @@ import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Базовый десериализатор для Avro-сообщений.
  * Может быть использован для десериализации любых классов, сгенерированных из Avro-схем.
+ * <p>
+ * Один экземпляр можно использовать из нескольких потоков без блокировок: декодер
+ * хранится отдельно для каждого потока, а читатели не имеют изменяемого состояния.
+ * Для каждой схемы писателя, отличной от схемы чтения, создается читатель с разрешением
+ * схем; читатели кешируются по 64-битному отпечатку схемы писателя (CRC-64-AVRO),
+ * а {@link org.apache.avro.io.ResolvingDecoder} внутри читателя создается один раз на поток.
+ * Поэтому записи, сделанные старой или новой версией схемы, читаются без перезапуска.
+ * <p>
+ * Запись с заголовком {@link SingleObjectEncoding} читается схемой писателя, найденной
+ * по отпечатку в {@link AvroSchemaRegistry}; если отпечаток совпадает со схемой чтения,
+ * реестр и разрешение схем не используются. Запись без заголовка считается записанной
+ * схемой чтения.
+ * <p>
+ * Если включен {@link #REUSE_DATUM_CONFIG}, поток повторно заполняет один и тот же
+ * экземпляр записи. Возвращенный объект действителен только до следующего вызова
+ * в том же потоке, поэтому опция подходит лишь для обработки по одной записи,
+ * но не для пакетных слушателей, которые получают сразу список записей.
  *
  * @param <T> тип события, расширяющий SpecificRecordBase
  */
 public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
 
+    /**
+     * Включает повторное использование экземпляра записи в пределах потока.
+     */
+    public static final String REUSE_DATUM_CONFIG = "avro.deserializer.reuse.datum";
+
+    private static final ThreadLocal<BinaryDecoder> DECODERS = new ThreadLocal<>();
+
     private final DecoderFactory decoderFactory;
+    private final Schema readerSchema;
+    private final long readerFingerprint;
     private final DatumReader<T> datumReader;
-    private BinaryDecoder decoder;
+    private final ConcurrentMap<Long, DatumReader<T>> resolvingReaders = new ConcurrentHashMap<>();
+    private final ThreadLocal<T> reusedDatum = new ThreadLocal<>();
+    private volatile boolean reuseDatum;
 
     /**
      * Конструктор с указанием схемы данных.
@@ -40,20 +72,100 @@ public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deser
      */
     public BaseAvroDeserializer(DecoderFactory decoderFactory, Schema schema) {
         this.decoderFactory = decoderFactory;
+        this.readerSchema = schema;
+        this.readerFingerprint = SchemaNormalization.parsingFingerprint64(schema);
         this.datumReader = new SpecificDatumReader<>(schema);
     }
 
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object reuse = configs.get(REUSE_DATUM_CONFIG);
+        reuseDatum = reuse != null && Boolean.parseBoolean(reuse.toString());
+    }
+
     @Override
     public T deserialize(String topic, byte[] data) {
         if (data == null) {
             return null;
         }
+        if (SingleObjectEncoding.hasHeader(data)) {
+            return readWithHeader(data);
+        }
+        return read(datumReader, data, 0, data.length);
+    }
+
+    /**
+     * Десериализует запись, сделанную известной схемой писателя.
+     *
+     * @param data         данные записи
+     * @param writerSchema схема, которой запись была сериализована
+     */
+    public T deserialize(byte[] data, Schema writerSchema) {
+        if (data == null) {
+            return null;
+        }
+        return read(readerFor(writerSchema), data, 0, data.length);
+    }
+
+    private T readWithHeader(byte[] data) {
+        long writerFingerprint = SingleObjectEncoding.readFingerprint(data);
+        DatumReader<T> reader;
+        if (writerFingerprint == readerFingerprint) {
+            reader = datumReader;
+        } else {
+            Schema writerSchema = AvroSchemaRegistry.find(writerFingerprint);
+            if (writerSchema == null) {
+                throw new SerializationException("Unknown Avro schema fingerprint: "
+                        + Long.toHexString(writerFingerprint));
+            }
+            reader = readerFor(writerFingerprint, writerSchema);
+        }
+        int offset = SingleObjectEncoding.HEADER_LENGTH;
+        return read(reader, data, offset, data.length - offset);
+    }
+
+    /**
+     * Схема, в которую приводятся все прочитанные записи.
+     */
+    public Schema getReaderSchema() {
+        return readerSchema;
+    }
+
+    /**
+     * Читатель для записей указанной схемы писателя.
+     * При совпадении отпечатков используется читатель без разрешения схем.
+     */
+    protected DatumReader<T> readerFor(Schema writerSchema) {
+        return readerFor(SchemaNormalization.parsingFingerprint64(writerSchema), writerSchema);
+    }
+
+    /**
+     * Читатель для записей схемы писателя с заранее вычисленным отпечатком.
+     */
+    protected DatumReader<T> readerFor(long writerFingerprint, Schema writerSchema) {
+        if (writerFingerprint == readerFingerprint) {
+            return datumReader;
+        }
+        return resolvingReaders.computeIfAbsent(writerFingerprint,
+                fingerprint -> new SpecificDatumReader<>(writerSchema, readerSchema));
+    }
 
+    /**
+     * Читает запись из фрагмента массива декодером текущего потока.
+     */
+    protected T read(DatumReader<T> reader, byte[] data, int offset, int length) {
         try {
-            decoder = decoderFactory.binaryDecoder(data, decoder);
-            return datumReader.read(null, decoder);
-        } catch (IOException e) {
+            BinaryDecoder decoder = decoderFactory.binaryDecoder(data, offset, length, DECODERS.get());
+            DECODERS.set(decoder);
+
+            if (!reuseDatum) {
+                return reader.read(null, decoder);
+            }
+            T datum = reader.read(reusedDatum.get(), decoder);
+            reusedDatum.set(datum);
+            return datum;
+        } catch (IOException | RuntimeException e) {
             throw new SerializationException("Error deserializing Avro message", e);
         }
     }
-}
\ No newline at end of file
+}
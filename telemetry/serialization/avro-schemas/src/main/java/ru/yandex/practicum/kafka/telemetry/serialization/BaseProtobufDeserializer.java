@@ -0,0 +1,43 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Базовый десериализатор для записей в формате protobuf с заголовком {@link ProtobufEncoding}.
+ * Не имеет изменяемого состояния и может использоваться из нескольких потоков.
+ *
+ * @param <T> тип proto-сообщения
+ */
+public class BaseProtobufDeserializer<T extends MessageLite> implements Deserializer<T> {
+
+    private final Parser<T> parser;
+
+    /**
+     * Конструктор с указанием парсера сообщения.
+     *
+     * @param parser парсер proto-сообщения, например {@code SensorEventProto.parser()}
+     */
+    public BaseProtobufDeserializer(Parser<T> parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!ProtobufEncoding.hasHeader(data)) {
+            throw new SerializationException("Record is not in protobuf wire format");
+        }
+
+        try {
+            return parser.parseFrom(data, ProtobufEncoding.HEADER_LENGTH, data.length - ProtobufEncoding.HEADER_LENGTH);
+        } catch (InvalidProtocolBufferException e) {
+            throw new SerializationException("Error deserializing protobuf message", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Переиспользуемый буфер для сериализации.
+ * <p>
+ * В отличие от {@link java.io.ByteArrayOutputStream} методы не синхронизированы,
+ * а выделенный массив сохраняется между записями и может быть уменьшен,
+ * если после редкой большой записи он стал избыточным.
+ * Экземпляр не потокобезопасен.
+ */
+class GrowableByteArrayOutputStream extends OutputStream {
+
+    private byte[] buffer;
+    private int count;
+
+    GrowableByteArrayOutputStream(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Начинает новую запись, сохраняя выделенный массив.
+     */
+    void reset() {
+        count = 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Заменяет массив на меньший. Допустимо только между записями.
+     */
+    void shrink(int capacity) {
+        if (count == 0 && capacity < buffer.length) {
+            buffer = new byte[capacity];
+        }
+    }
+
+    /**
+     * Копия записанных байт точного размера.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+        }
+    }
+}
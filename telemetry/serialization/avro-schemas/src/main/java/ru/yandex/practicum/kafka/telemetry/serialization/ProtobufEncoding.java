@@ -0,0 +1,51 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * Заголовок записи в формате protobuf: маркер {@code C3} и версия формата {@code 02},
+ * за которыми следуют байты proto-сообщения.
+ * <p>
+ * Маркер общий с {@link SingleObjectEncoding}, а версия отличает формат, поэтому
+ * десериализатор различает Avro с заголовком, Avro без заголовка и protobuf
+ * по первым двум байтам записи.
+ */
+public final class ProtobufEncoding {
+
+    public static final byte MARKER = SingleObjectEncoding.MARKER;
+    public static final byte VERSION = 0x02;
+    public static final int HEADER_LENGTH = 2;
+
+    private ProtobufEncoding() {
+    }
+
+    /**
+     * Записывает сообщение с заголовком в массив точного размера.
+     * Размер сообщения уже вычислен при разборе gRPC-запроса, поэтому
+     * сообщение кодируется за один проход без промежуточных буферов.
+     */
+    public static byte[] encode(MessageLite message) {
+        byte[] data = new byte[HEADER_LENGTH + message.getSerializedSize()];
+        data[0] = MARKER;
+        data[1] = VERSION;
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+            message.writeTo(output);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new SerializationException("Error serializing protobuf message", e);
+        }
+        return data;
+    }
+
+    /**
+     * Проверяет, записано ли сообщение в формате protobuf.
+     */
+    public static boolean hasHeader(byte[] data) {
+        return data.length >= HEADER_LENGTH && data[0] == MARKER && data[1] == VERSION;
+    }
+}
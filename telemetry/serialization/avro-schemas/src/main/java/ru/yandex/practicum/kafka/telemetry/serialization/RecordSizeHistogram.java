@@ -0,0 +1,74 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Скользящая гистограмма размеров сериализованных записей.
+ * <p>
+ * Размеры раскладываются по корзинам степеней двойки. Когда число наблюдений
+ * достигает {@link #DECAY_INTERVAL}, счетчики делятся пополам, поэтому оценка
+ * следует за текущим распределением, а не за всей историей. Обновление без блокировок;
+ * при конкурентном затухании часть наблюдений может потеряться, что для оценки некритично.
+ */
+class RecordSizeHistogram {
+
+    private static final int BUCKETS = 32;
+    private static final long DECAY_INTERVAL = 10_000;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+
+    void record(int size) {
+        counts.incrementAndGet(bucket(size));
+        if (total.incrementAndGet() >= DECAY_INTERVAL) {
+            decay();
+        }
+    }
+
+    /**
+     * Верхняя граница корзины, в которую попадает заданная доля записей.
+     *
+     * @return оценка размера или 0, если наблюдений еще нет
+     */
+    int percentile(double quantile) {
+        long observed = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            observed += counts.get(i);
+        }
+        if (observed == 0) {
+            return 0;
+        }
+
+        // Счетчики могут измениться между проходами - оценка от этого лишь немного смещается
+        long threshold = (long) Math.ceil(observed * quantile);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= threshold) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private void decay() {
+        long remaining = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long value;
+            do {
+                value = counts.get(i);
+            } while (!counts.compareAndSet(i, value, value >> 1));
+            remaining += value >> 1;
+        }
+        total.set(remaining);
+    }
+
+    private static int bucket(int size) {
+        return size <= 1 ? 0 : Math.min(BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    private static int upperBound(int bucket) {
+        return bucket >= 30 ? Integer.MAX_VALUE - 8 : 1 << bucket;
+    }
+}
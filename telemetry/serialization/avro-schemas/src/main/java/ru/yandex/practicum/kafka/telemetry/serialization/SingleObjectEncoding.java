@@ -0,0 +1,62 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+/**
+ * Заголовок Avro single-object encoding: маркер {@code C3 01} и 64-битный отпечаток
+ * схемы писателя (CRC-64-AVRO от канонической формы) в порядке little-endian.
+ * <p>
+ * Запись без заголовка начинается с длины строкового поля в zig-zag varint.
+ * Последовательность {@code C3 01} в таком виде означает отрицательную длину,
+ * поэтому для схем, первое поле которых строка (все схемы телеметрии), заголовок
+ * определяется однозначно и записи старого формата читаются без настройки.
+ */
+public final class SingleObjectEncoding {
+
+    public static final byte MARKER = (byte) 0xC3;
+    public static final byte VERSION = 0x01;
+    public static final int HEADER_LENGTH = 10;
+
+    private SingleObjectEncoding() {
+    }
+
+    /**
+     * Отпечаток схемы, записываемый в заголовок.
+     */
+    public static long fingerprint(Schema schema) {
+        return SchemaNormalization.parsingFingerprint64(schema);
+    }
+
+    /**
+     * Заголовок для записей указанной схемы.
+     */
+    public static byte[] header(Schema schema) {
+        long fingerprint = fingerprint(schema);
+        byte[] header = new byte[HEADER_LENGTH];
+        header[0] = MARKER;
+        header[1] = VERSION;
+        for (int i = 0; i < Long.BYTES; i++) {
+            header[2 + i] = (byte) (fingerprint >>> (8 * i));
+        }
+        return header;
+    }
+
+    /**
+     * Проверяет, начинается ли запись с заголовка single-object encoding.
+     */
+    public static boolean hasHeader(byte[] data) {
+        return data.length >= HEADER_LENGTH && data[0] == MARKER && data[1] == VERSION;
+    }
+
+    /**
+     * Отпечаток схемы из заголовка записи.
+     */
+    public static long readFingerprint(byte[] data) {
+        long fingerprint = 0;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            fingerprint = (fingerprint << 8) | (data[2 + i] & 0xFF);
+        }
+        return fingerprint;
+    }
+}
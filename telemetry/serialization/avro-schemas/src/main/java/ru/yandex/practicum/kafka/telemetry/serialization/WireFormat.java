@@ -0,0 +1,17 @@
+package ru.yandex.practicum.kafka.telemetry.serialization;
+
+/**
+ * Формат записей в топиках событий датчиков и хабов.
+ */
+public enum WireFormat {
+
+    /**
+     * Бинарный Avro, при включенном заголовке - с отпечатком схемы {@link SingleObjectEncoding}.
+     */
+    AVRO,
+
+    /**
+     * Байты proto-сообщения, полученного по gRPC, с заголовком {@link ProtobufEncoding}.
+     */
+    PROTOBUF
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.kafka.telemetry.snapshot;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Сборка полного состояния хабов из дельта-снапшотов на стороне потребителя.
+ * <p>
+ * Для каждого хаба хранится один изменяемый {@link SensorsSnapshotAvro}, в который
+ * вливаются изменившиеся датчики, поэтому стоимость обработки дельты пропорциональна
+ * ее размеру, а не размеру хаба. Правила применения:
+ * <ul>
+ *     <li>опорный кадр всегда заменяет состояние хаба - так переживаются перезапуск
+ *     агрегатора и повторное чтение топика;</li>
+ *     <li>дельта следующей версии вливается в состояние;</li>
+ *     <li>дельта уже примененной версии (повторная доставка) пропускается;</li>
+ *     <li>после пропуска версий или без опорного кадра дельты пропускаются до следующего кадра.</li>
+ * </ul>
+ * Возвращаемый снапшот - представление текущего состояния хаба: он меняется следующими
+ * вызовами для того же хаба и не должен сохраняться потребителем.
+ * <p>
+ * {@link #reassemble(SensorsSnapshotDeltaAvro)} вместе с состоянием сообщает, какие датчики
+ * изменились с предыдущего возвращенного состояния хаба. Для дельты это ее датчики, для опорного
+ * кадра - датчики, состояние которых отличается от прежнего или которых больше нет. Так потребитель
+ * перепроверяет только изменившееся, даже если агрегатор отправляет только опорные кадры.
+ * <p>
+ * События одного хаба приходят из одной партиции, поэтому экземпляр можно использовать
+ * из нескольких потоков слушателя при условии, что хаб обрабатывает только один из них.
+ */
+public class SnapshotReassembler {
+
+    private final ConcurrentMap<String, HubState> hubs = new ConcurrentHashMap<>();
+
+    /**
+     * Применяет дельту к состоянию хаба.
+     *
+     * @return полное состояние хаба или Optional.empty(), если дельту нельзя применить
+     */
+    public Optional<SensorsSnapshotAvro> apply(SensorsSnapshotDeltaAvro delta) {
+        return reassemble(delta).map(Reassembled::state);
+    }
+
+    /**
+     * Применяет дельту к состоянию хаба и определяет изменившиеся датчики.
+     *
+     * @return полное состояние хаба с изменившимися датчиками или Optional.empty(),
+     * если дельту нельзя применить
+     */
+    public Optional<Reassembled> reassemble(SensorsSnapshotDeltaAvro delta) {
+        String hubId = delta.getHubId();
+        HubState hub = hubs.get(hubId);
+        Collection<String> changedSensors;
+
+        if (delta.getKeyframe()) {
+            if (hub == null) {
+                hub = new HubState(hubId);
+                hubs.put(hubId, hub);
+                hub.snapshot.getSensorsState().putAll(delta.getSensorsState());
+                changedSensors = null;
+            } else {
+                changedSensors = replace(hub.snapshot.getSensorsState(), delta.getSensorsState());
+            }
+        } else {
+            if (hub == null || !hub.complete || delta.getVersion() > hub.version + 1) {
+                // Пропущены версии: состояние неизвестно до следующего опорного кадра
+                if (hub != null) {
+                    hub.complete = false;
+                }
+                return Optional.empty();
+            }
+            if (delta.getVersion() <= hub.version) {
+                return Optional.empty();
+            }
+            hub.snapshot.getSensorsState().putAll(delta.getSensorsState());
+            changedSensors = delta.getSensorsState().keySet();
+        }
+
+        hub.version = delta.getVersion();
+        hub.complete = true;
+        hub.snapshot.setTimestamp(delta.getTimestamp());
+        return Optional.of(new Reassembled(hub.snapshot, changedSensors));
+    }
+
+    /**
+     * Заменяет состояние хаба состоянием опорного кадра на месте.
+     *
+     * @return датчики, состояние которых изменилось или исчезло
+     */
+    private static Collection<String> replace(Map<String, SensorStateAvro> current,
+                                              Map<String, SensorStateAvro> keyframe) {
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, SensorStateAvro> entry : keyframe.entrySet()) {
+            if (!entry.getValue().equals(current.put(entry.getKey(), entry.getValue()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        if (current.size() > keyframe.size()) {
+            Iterator<String> sensors = current.keySet().iterator();
+            while (sensors.hasNext()) {
+                String sensorId = sensors.next();
+                if (!keyframe.containsKey(sensorId)) {
+                    sensors.remove();
+                    changed.add(sensorId);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Текущее состояние хаба или Optional.empty(), если оно неизвестно.
+     */
+    public Optional<SensorsSnapshotAvro> get(String hubId) {
+        HubState hub = hubs.get(hubId);
+        return hub != null && hub.complete ? Optional.of(hub.snapshot) : Optional.empty();
+    }
+
+    /**
+     * Забывает состояние хаба, например после его удаления.
+     */
+    public void remove(String hubId) {
+        hubs.remove(hubId);
+    }
+
+    /**
+     * Состояние хаба после применения дельты.
+     *
+     * @param state          полное состояние хаба
+     * @param changedSensors датчики, изменившиеся с предыдущего состояния, или null,
+     *                       если предыдущего состояния не было
+     */
+    public record Reassembled(SensorsSnapshotAvro state, Collection<String> changedSensors) {
+    }
+
+    private static final class HubState {
+        private final SensorsSnapshotAvro snapshot;
+        private long version;
+        private boolean complete;
+
+        private HubState(String hubId) {
+            this.snapshot = SensorsSnapshotAvro.newBuilder()
+                    .setHubId(hubId)
+                    .setTimestamp(Instant.EPOCH)
+                    .setSensorsState(new HashMap<>())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.kafka.telemetry.snapshot;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotReassemblerTest {
+
+    private final SnapshotReassembler reassembler = new SnapshotReassembler();
+
+    @Test
+    void firstKeyframeHasUnknownChanges() {
+        SnapshotReassembler.Reassembled first = reassembler.reassemble(
+                keyframe(1, Map.of("switch-1", state(1, true)))).orElseThrow();
+
+        assertNull(first.changedSensors());
+        assertEquals(Set.of("switch-1"), first.state().getSensorsState().keySet());
+    }
+
+    @Test
+    void keyframeReportsChangedAndRemovedSensors() {
+        reassembler.reassemble(keyframe(1, Map.of(
+                "switch-1", state(1, true),
+                "switch-2", state(1, true),
+                "switch-3", state(1, true))));
+
+        SnapshotReassembler.Reassembled next = reassembler.reassemble(keyframe(2, Map.of(
+                "switch-1", state(1, true),
+                "switch-2", state(2, false),
+                "switch-4", state(2, true)))).orElseThrow();
+
+        assertEquals(Set.of("switch-2", "switch-3", "switch-4"), Set.copyOf(next.changedSensors()));
+        assertEquals(Set.of("switch-1", "switch-2", "switch-4"), next.state().getSensorsState().keySet());
+    }
+
+    @Test
+    void keyframeWithSameReadingAtNewTimeIsAChange() {
+        reassembler.reassemble(keyframe(1, Map.of("switch-1", state(1, true))));
+
+        SnapshotReassembler.Reassembled next = reassembler.reassemble(
+                keyframe(2, Map.of("switch-1", state(2, true)))).orElseThrow();
+
+        assertEquals(Set.of("switch-1"), Set.copyOf(next.changedSensors()));
+    }
+
+    @Test
+    void unchangedKeyframeReportsNoChanges() {
+        reassembler.reassemble(keyframe(1, Map.of("switch-1", state(1, true))));
+
+        SnapshotReassembler.Reassembled next = reassembler.reassemble(
+                keyframe(2, Map.of("switch-1", state(1, true)))).orElseThrow();
+
+        assertEquals(Set.of(), Set.copyOf(next.changedSensors()));
+    }
+
+    @Test
+    void deltaReportsItsSensors() {
+        reassembler.reassemble(keyframe(1, Map.of("switch-1", state(1, true))));
+
+        SnapshotReassembler.Reassembled next = reassembler.reassemble(
+                delta(2, Map.of("switch-2", state(2, true)))).orElseThrow();
+
+        assertEquals(Set.of("switch-2"), Set.copyOf(next.changedSensors()));
+        assertEquals(Set.of("switch-1", "switch-2"), next.state().getSensorsState().keySet());
+    }
+
+    @Test
+    void skipsDeltasAfterGapUntilNextKeyframe() {
+        reassembler.reassemble(keyframe(1, Map.of("switch-1", state(1, true))));
+
+        assertTrue(reassembler.reassemble(delta(3, Map.of("switch-2", state(3, true)))).isEmpty());
+        assertTrue(reassembler.reassemble(delta(4, Map.of("switch-3", state(4, true)))).isEmpty());
+
+        SnapshotReassembler.Reassembled next = reassembler.reassemble(keyframe(5, Map.of(
+                "switch-1", state(1, true),
+                "switch-2", state(3, true)))).orElseThrow();
+        assertEquals(Set.of("switch-2"), Set.copyOf(next.changedSensors()));
+
+        assertTrue(reassembler.reassemble(delta(6, Map.of("switch-3", state(6, true)))).isPresent());
+    }
+
+    @Test
+    void ignoresDuplicateDeltas() {
+        reassembler.reassemble(keyframe(1, Map.of("switch-1", state(1, true))));
+        reassembler.reassemble(delta(2, Map.of("switch-1", state(2, false))));
+
+        assertTrue(reassembler.reassemble(delta(2, Map.of("switch-1", state(2, false)))).isEmpty());
+        assertTrue(reassembler.reassemble(delta(1, Map.of("switch-1", state(1, true)))).isEmpty());
+
+        SensorsSnapshotAvro current = reassembler.get("hub-1").orElseThrow();
+        assertEquals(state(2, false), current.getSensorsState().get("switch-1"));
+        assertTrue(reassembler.reassemble(delta(3, Map.of("switch-2", state(3, true)))).isPresent());
+    }
+
+    static SensorsSnapshotDeltaAvro keyframe(long version, Map<String, SensorStateAvro> sensors) {
+        return snapshot(version, true, sensors);
+    }
+
+    static SensorsSnapshotDeltaAvro delta(long version, Map<String, SensorStateAvro> sensors) {
+        return snapshot(version, false, sensors);
+    }
+
+    static SensorStateAvro state(long timestamp, boolean on) {
+        return SensorStateAvro.newBuilder()
+                .setTimestamp(Instant.ofEpochMilli(timestamp))
+                .setData(new SwitchSensorAvro(on))
+                .build();
+    }
+
+    private static SensorsSnapshotDeltaAvro snapshot(long version, boolean keyframe,
+                                                     Map<String, SensorStateAvro> sensors) {
+        return SensorsSnapshotDeltaAvro.newBuilder()
+                .setHubId("hub-1")
+                .setTimestamp(Instant.ofEpochMilli(version))
+                .setVersion(version)
+                .setKeyframe(keyframe)
+                .setSensorsState(new HashMap<>(sensors))
+                .build();
+    }
+}